@@ -9,6 +9,7 @@ import ca.mcgill.ecse211.detectors.CanColour;
 import ca.mcgill.ecse211.detectors.ColourDetector;
 import ca.mcgill.ecse211.detectors.WeightDetector;
 import ca.mcgill.ecse211.localizers.Localization;
+import ca.mcgill.ecse211.localizers.PassiveLineCorrector;
 import ca.mcgill.ecse211.navigators.MovementController;
 import ca.mcgill.ecse211.navigators.Navigator;
 import ca.mcgill.ecse211.odometer.Odometer;
@@ -43,6 +44,8 @@ public class Main {
     public static final double             TRACK_CCW               = 8.89;
     // distance from the light back light sensors to the wheel-base
     public static double                   LT_SENSOR_TO_WHEELBASE  = 9.2;
+    // distance between the left and right back light sensors
+    public static double                   LT_SENSOR_SPACING       = 10.6;
     // distance from the ultrasonic sensor to the "thumb" of the claw
     public static double                   US_SENSOR_TO_CLAW       = 1.0;
     // median filter window width
@@ -102,6 +105,7 @@ public class Main {
     private static LightDifferentialFilter rightLightDifferentialFilter;
     private static MedianDistanceSensor    medianDistanceSensor;
     private static Localization            localizer;
+    private static PassiveLineCorrector    passiveCorrector;
     private static Navigator               navigator;
     private static CanSearch               canSearch;
     private static WeightDetector          weightDetector;
@@ -183,6 +187,15 @@ public class Main {
                 movementController, odometer, medianDistanceSensor, leftLightDifferentialFilter,
                 rightLightDifferentialFilter, startingCorner
         );
+        // corrects the odometer from the lines crossed while driving, it needs its own filters
+        passiveCorrector = new PassiveLineCorrector(
+                odometer, movementController,
+                new LightDifferentialFilter(backLeftLSProvider, new float[backLeftLSProvider.sampleSize()]),
+                new LightDifferentialFilter(backRightLSProvider, new float[backRightLSProvider.sampleSize()])
+        );
+        localizer.setPassiveCorrector(passiveCorrector);
+        Thread passiveCorrectorThread = new Thread(passiveCorrector);
+        passiveCorrectorThread.start();
         
         // start the time tracker
         timeTracker.start();
@@ -214,10 +227,13 @@ public class Main {
         lcd.clear();
         // set the scan positions and dumping positions for the search zone
         canSearch.setScanPositions();
+        // plan the routes to and from the tunnel and to the dumping points
+        navigator.precomputeRoutes();
         // next, loca lize
-        localizer.initialUSLocalization();
-        localizer.initialLightLocalization();
+        localizer.singleRotationUSLocalization();
+        localizer.rotationLightLocalization();
         Beeper.localized();
+        passiveCorrector.setEnabled(true);
         // go to the tunnel
         claw.closeClaw();
         System.out.println("STARTING CORNER IS "+ startingCorner);
@@ -264,7 +280,7 @@ public class Main {
             }
             claw.closeClaw();
             Beeper.droppedOffCans();
-            localizer.quickLocalization();
+            localizer.quickLocalizationIfNeeded(TILE_SIZE, Navigator.LEG_TOLERANCE);
             // go to the tunnel
             navigator.travelToTunnel(true);
             // travel through the tunnel
@@ -272,6 +288,7 @@ public class Main {
             // travel to search zone
             navigator.travelToSearchZone();
         }
+        System.out.println(localizer.getSchedulerReport());
         
         System.exit(0);
     }
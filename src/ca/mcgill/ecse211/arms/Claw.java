@@ -4,17 +4,42 @@ import lejos.hardware.motor.EV3LargeRegulatedMotor;
 
 /**
  * Provides methods for controlling the motor that will grab the cans.
+ * <p>
+ * Every time the claw closes, the claw's tacho count is recorded at a fixed
+ * period. This closure profile is used to know if a can was grabbed and how
+ * deep in the jaws it is.
  * 
  * @author Julian Armour
- * @version 3
+ * @version 4
  * @since March 14, 2019
  */
 public class Claw {
 
     private EV3LargeRegulatedMotor claw;
-    private static final int       CLAW_SPEED     = 180;
-    private static int             RELEASED_ANGLE = 0;
-    private static int             GRABBED_ANGLE  = 176;
+    private static final int       CLAW_SPEED          = 180;
+    private static int             RELEASED_ANGLE      = 0;
+    private static int             GRABBED_ANGLE       = 176;
+    // closure profile sampling
+    private static final int       CLAW_POLL_PERIOD    = 10;
+    private static final int       MAX_PROFILE_SIZE    = 200;
+    // stall detection: position error (deg) and time (in units of 10ms)
+    private static final int       STALL_ERROR         = 10;
+    private static final int       STALL_TIME          = 10;
+    // the claw is considered to have touched the can when it slows below this
+    // fraction of CLAW_SPEED
+    private static final float     CONTACT_SPEED_RATIO = 0.5f;
+    // the claw needs this many degrees to reach CLAW_SPEED
+    private static final int       SPEED_UP_ANGLE      = 20;
+    // contact angles for a can touching the tips of the jaws and for a can sitting
+    // against the back of the jaws
+    private static final int       TIP_CONTACT_ANGLE   = 170;
+    private static final int       BACK_CONTACT_ANGLE  = 140;
+
+    private int[]                  closureProfile      = new int[MAX_PROFILE_SIZE];
+    private int                    profileSize;
+    private int                    finalTacho;
+    private int                    contactAngle;
+    private boolean                stalled;
 
     /**
      * @param clawMotor
@@ -24,27 +49,56 @@ public class Claw {
     public Claw(EV3LargeRegulatedMotor clawMotor) {
         this.claw = clawMotor;
         clawMotor.resetTachoCount();
+        clawMotor.setStallThreshold(STALL_ERROR, STALL_TIME);
     }
 
     /**
-     * Causes the claw arm to close around a can.
+     * Causes the claw arm to close around a can. The closure is monitored to
+     * determine if a can was grabbed.
+     * 
+     * @return true if a can is held by the claw
      * 
      * @author Julian Armour
      * @since March 5, 2019
      */
-    public void closeClaw() {
+    public boolean closeClaw() {
         claw.setSpeed(CLAW_SPEED);
-        claw.rotateTo(GRABBED_ANGLE, false);
+        profileSize = 0;
+        stalled = false;
+        contactAngle = -1;
+        claw.rotateTo(GRABBED_ANGLE, true);
+        while (claw.isMoving()) {
+            int tacho = claw.getTachoCount();
+            if (profileSize < MAX_PROFILE_SIZE) {
+                closureProfile[profileSize++] = tacho;
+            }
+            if (claw.isStalled()) {
+                // the claw is pressing against something, hold it there
+                stalled = true;
+                claw.stop();
+                break;
+            }
+            try {
+                Thread.sleep(CLAW_POLL_PERIOD);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        finalTacho = claw.getTachoCount();
+        contactAngle = findContactAngle();
+        return canIsHeld();
     }
 
     /**
      * Causes the claw to rest in front of a can for weight detection.
      * 
+     * @return true if a can is held by the claw
+     * 
      * @author Julian Armour
      * @since March 16, 2019
      */
-    public void closeClawForWeighing() {
-        closeClaw();
+    public boolean closeClawForWeighing() {
+        return closeClaw();
     }
 
     /**
@@ -58,4 +112,80 @@ public class Claw {
         claw.rotateTo(RELEASED_ANGLE, false);
     }
 
+    /**
+     * Finds the angle at which the claw slowed down during the last closure, which
+     * is where it touched a can.
+     * 
+     * @return the contact angle, or -1 if the claw closed freely
+     * 
+     * @author Julian Armour
+     * @since April 3, 2019
+     */
+    private int findContactAngle() {
+        float minStep = CONTACT_SPEED_RATIO * CLAW_SPEED * CLAW_POLL_PERIOD / 1000f;
+        for (int i = 1; i < profileSize; i++) {
+            if (closureProfile[i - 1] < SPEED_UP_ANGLE) {
+                continue;
+            }
+            if (closureProfile[i] - closureProfile[i - 1] < minStep) {
+                return closureProfile[i - 1];
+            }
+        }
+        if (stalled) {
+            return finalTacho;
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if the last closure stopped on a can.
+     * 
+     * @author Julian Armour
+     * @since April 3, 2019
+     */
+    public boolean canIsHeld() {
+        return stalled || (contactAngle >= 0 && contactAngle < GRABBED_ANGLE - STALL_ERROR);
+    }
+
+    /**
+     * Estimates where the can is in the jaws from the last closure.
+     * 
+     * @return 0 if the can is at the tips of the jaws, up to 1 if it is against the
+     *         back of the jaws. -1 if no can is held.
+     * 
+     * @author Julian Armour
+     * @since April 3, 2019
+     */
+    public float getCanDepth() {
+        if (!canIsHeld()) {
+            return -1;
+        }
+        float depth = (float) (TIP_CONTACT_ANGLE - contactAngle) / (TIP_CONTACT_ANGLE - BACK_CONTACT_ANGLE);
+        return Math.max(0, Math.min(1, depth));
+    }
+
+    /**
+     * @return the claw's tacho count at the end of the last closure
+     */
+    public int getFinalTacho() {
+        return finalTacho;
+    }
+
+    /**
+     * @return true if the claw stalled during the last closure
+     */
+    public boolean stalled() {
+        return stalled;
+    }
+
+    /**
+     * @return the claw's tacho counts sampled every {@value #CLAW_POLL_PERIOD} ms
+     *         during the last closure
+     */
+    public int[] getClosureProfile() {
+        int[] profile = new int[profileSize];
+        System.arraycopy(closureProfile, 0, profile, 0, profileSize);
+        return profile;
+    }
+
 }
@@ -9,12 +9,15 @@ import lejos.hardware.motor.EV3MediumRegulatedMotor;
  * 
  * @author Julian Armour
  * @since March 13, 2019
- * @version 1
+ * @version 2
  */
 public class ColourArm {
-    private static final int        INIT_SCAN_POS = 0;
-    private static final int        FIN_SCAN_POS  = -228;
-    private static final int        SCAN_SPEED    = 90;
+    private static final int        INIT_SCAN_POS      = 0;
+    private static final int        FIN_SCAN_POS       = -228;
+    private static final int        SCAN_SPEED         = 270;
+    // arm angles (tacho) between which the colour sensor is facing the can
+    private static final int        CAN_FACE_START_POS = -24;
+    private static final int        CAN_FACE_END_POS   = -204;
 
     private EV3MediumRegulatedMotor colourMotor;
 
@@ -24,21 +27,61 @@ public class ColourArm {
     }
 
     /**
-     * Moves the colour motor around the can and back.
+     * Starts sweeping the colour sensor around the can. The method returns
+     * immediately, use {@link #isSweeping()} to know when the sweep is over.
      * <p>
      * This should be called from {@link ColourDetector#collectColourData(int)}
      * 
-     * @param numberOfScans
-     *            The number of scan to perform.
+     * @param outward
+     *            if true, the arm sweeps from the initial position to the final
+     *            position. If false, it sweeps back to the initial position.
      * 
      * @author Julian Armour
-     * @since March 13, 2019
+     * @since April 2, 2019
      */
-    public void scan(int numberOfScans) {
-        for (int i = 0; i < numberOfScans; i++) {
-            colourMotor.setSpeed(SCAN_SPEED);
-            colourMotor.rotateTo(FIN_SCAN_POS, false);
-            colourMotor.rotateTo(INIT_SCAN_POS, false);
+    public void startSweep(boolean outward) {
+        colourMotor.setSpeed(SCAN_SPEED);
+        if (outward) {
+            colourMotor.rotateTo(FIN_SCAN_POS, true);
+        } else {
+            colourMotor.rotateTo(INIT_SCAN_POS, true);
         }
     }
+
+    /**
+     * @return true if the arm is still moving from a call to
+     *         {@link #startSweep(boolean)}
+     * 
+     * @author Julian Armour
+     * @since April 2, 2019
+     */
+    public boolean isSweeping() {
+        return colourMotor.isMoving();
+    }
+
+    /**
+     * @return the current angle (tacho count) of the colour arm
+     * 
+     * @author Julian Armour
+     * @since April 2, 2019
+     */
+    public int getArmAngle() {
+        return colourMotor.getTachoCount();
+    }
+
+    /**
+     * Determines if the colour sensor is facing the can's surface when the arm is
+     * at a certain angle. Near the ends of the sweep the sensor partially sees the
+     * background instead of the can.
+     * 
+     * @param armAngle
+     *            the arm angle (tacho count)
+     * @return true if the colour sensor faces the can at this arm angle
+     * 
+     * @author Julian Armour
+     * @since April 2, 2019
+     */
+    public static boolean isFacingCan(float armAngle) {
+        return armAngle <= CAN_FACE_START_POS && armAngle >= CAN_FACE_END_POS;
+    }
 }
@@ -7,18 +7,16 @@ import java.util.List;
 
 import ca.mcgill.ecse211.arms.ColourArm;
 import lejos.robotics.SampleProvider;
-import lejos.utility.Timer;
-import lejos.utility.TimerListener;
 
 /**
  * Contains methods for collecting colour data from cans and determining the
  * most probable colour from this data
  * 
  * @author Julian Armour, Cedric Barre
- * @version 1
+ * @version 2
  * @since March 8 2019
  */
-public class ColourDetector implements TimerListener {
+public class ColourDetector {
 
     private static final float RCAN_RMEAN         = 0.9702f;
     private static final float RCAN_GMEAN         = 0.1848f;
@@ -36,12 +34,13 @@ public class ColourDetector implements TimerListener {
     private static final float GCAN_GMEAN         = 0.7284f;
     private static final float GCAN_BMEAN         = 0.4729f;
 
-    private static final int   COLOUR_POLL_PERIOD = 50;
+    private static final int   COLOUR_POLL_PERIOD = 10;
+    // index of the arm angle in a colour sample, after the R, G and B values
+    public static final int    ARM_ANGLE_INDEX    = 3;
     private ColourArm          colourArm;
     private SampleProvider     colourSampler;
 
     private List<float[]>      colourSamples;
-    private Timer              colourPoller;
 
     /**
      * 
@@ -53,13 +52,15 @@ public class ColourDetector implements TimerListener {
     public ColourDetector(ColourArm colourArm, SampleProvider colourSampler) {
         this.colourArm = colourArm;
         this.colourSampler = colourSampler;
-        this.colourPoller = new Timer(COLOUR_POLL_PERIOD, this);
     }
 
     /**
-     * This is the main entry point for starting the colour detection routine.
+     * This is the main entry point for starting the colour detection routine. The
+     * colour sensor is polled while the arm sweeps around the can and every sample
+     * is tagged with the arm's angle at the time it was taken.
      * <p>
-     * The colour data can then be retrieved with {@link #getColourSamples()}
+     * The colour data can then be retrieved with {@link #getColourSamples()} or
+     * {@link #getCanFaceSamples()}
      * 
      * @param numberOfScans
      *            The can will be scanned 2 x numberOfScans.
@@ -70,16 +71,45 @@ public class ColourDetector implements TimerListener {
     public void collectColourData(int numberOfScans) {
         // initialize a new list
         colourSamples = new LinkedList<float[]>();
-        // start polling colour data
-        colourPoller.start();
-        // start arm scan movement routine
-        colourArm.scan(numberOfScans);
-        // stop polling colour data
-        colourPoller.stop();
+        for (int i = 0; i < numberOfScans; i++) {
+            sweepAndSample(true);
+            sweepAndSample(false);
+        }
+    }
+
+    /**
+     * Performs one sweep of the colour arm and collects angle-tagged samples
+     * until the arm stops.
+     * 
+     * @param outward
+     *            the direction of the sweep, see
+     *            {@link ColourArm#startSweep(boolean)}
+     * 
+     * @author Julian Armour
+     * @since April 2, 2019
+     */
+    private void sweepAndSample(boolean outward) {
+        colourArm.startSweep(outward);
+        while (colourArm.isSweeping()) {
+            float[] sample = new float[ARM_ANGLE_INDEX + 1];
+            int angleBefore = colourArm.getArmAngle();
+            colourSampler.fetchSample(sample, 0);
+            int angleAfter = colourArm.getArmAngle();
+            // the sample was taken somewhere between the two readings of the arm angle
+            sample[ARM_ANGLE_INDEX] = (angleBefore + angleAfter) / 2f;
+            colourSamples.add(sample);
+            try {
+                Thread.sleep(COLOUR_POLL_PERIOD);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
     /**
      * Returns the colour samples that were collected from the previous scan.
+     * <p>
+     * Each sample is {R, G, B, arm angle}.
      * 
      * @return The colour samples from the previous scan
      */
@@ -88,16 +118,26 @@ public class ColourDetector implements TimerListener {
     }
 
     /**
-     * Fetches a colour sample and adds it to a list.
+     * Returns the colour samples from the previous scan that were taken while the
+     * sensor was facing the can. If none of the samples were taken facing the can,
+     * all the samples are returned.
+     * 
+     * @return The colour samples taken on the can's face
      * 
      * @author Julian Armour
-     * @since March 12, 2019
+     * @since April 2, 2019
      */
-    @Override
-    public void timedOut() {
-        float[] sample = new float[colourSampler.sampleSize()];
-        colourSampler.fetchSample(sample, 0);
-        colourSamples.add(sample);
+    public List<float[]> getCanFaceSamples() {
+        List<float[]> canFaceSamples = new LinkedList<float[]>();
+        for (float[] sample : colourSamples) {
+            if (ColourArm.isFacingCan(sample[ARM_ANGLE_INDEX])) {
+                canFaceSamples.add(sample);
+            }
+        }
+        if (canFaceSamples.isEmpty()) {
+            return colourSamples;
+        }
+        return canFaceSamples;
     }
 
     /**
@@ -124,9 +164,9 @@ public class ColourDetector implements TimerListener {
             GMean += data[1];
             BMean += data[2];
         }
-        RMean /= data.length;
-        GMean /= data.length;
-        BMean /= data.length;
+        RMean /= colourSamples.size();
+        GMean /= colourSamples.size();
+        BMean /= colourSamples.size();
 
         NRMean = (float) (RMean / Math.sqrt(Math.pow(RMean, 2) + Math.pow(GMean, 2) + Math.pow(BMean, 2)));
         NGMean = (float) (GMean / Math.sqrt(Math.pow(RMean, 2) + Math.pow(GMean, 2) + Math.pow(BMean, 2)));
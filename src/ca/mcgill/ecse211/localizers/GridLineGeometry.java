@@ -0,0 +1,238 @@
+package ca.mcgill.ecse211.localizers;
+
+/**
+ * Works out the robot's pose from the moments its two back light sensors cross
+ * the same grid line, at any heading. The sensors are side by side, behind the
+ * wheel base, so the distance the robot travels between the two crossings
+ * gives the angle between the robot and the line, and the position of the line
+ * on the grid gives the position across it.
+ * <p>
+ * For a vertical line x = c, with d the distance travelled from the left
+ * sensor's crossing to the right sensor's crossing and w the spacing of the
+ * sensors, the heading satisfies tan(theta) = w / -d. For a horizontal line,
+ * tan(theta) = d / w. Of the possible solutions, the one closest to the
+ * odometer's heading is kept.
+ *
+ * @author Julian Armour
+ * @since April 10, 2019
+ * @version 1
+ */
+public class GridLineGeometry {
+    // crossings where a sensor is this close (cm) to both kinds of line are
+    // ambiguous, the sensors may have crossed different lines
+    private static final double INTERSECTION_MARGIN = 4;
+    // lines crossed at less than this angle (deg) give a poor estimate
+    private static final double MIN_CROSSING_ANGLE  = 20;
+    // largest heading correction (deg) that is believed
+    private static final double MAX_HEADING_ERROR   = 20;
+    // largest distance (cm) between the expected and the measured line
+    private static final double MAX_POSITION_ERROR  = 8;
+    // largest difference (deg) between the heading errors given by the two lines
+    // of an intersection
+    private static final double MAX_LINE_MISMATCH   = 6;
+
+    private double              tileSize;
+    private double              sensorOffset;
+    private double              sensorSpacing;
+
+    /**
+     * @param tileSize
+     *            the distance between grid lines in cm
+     * @param sensorOffset
+     *            the distance in cm from the wheel base to the light sensors,
+     *            which are behind it
+     * @param sensorSpacing
+     *            the distance in cm between the left and right light sensors
+     */
+    public GridLineGeometry(double tileSize, double sensorOffset, double sensorSpacing) {
+        this.tileSize = tileSize;
+        this.sensorOffset = sensorOffset;
+        this.sensorSpacing = sensorSpacing;
+    }
+
+    /**
+     * Computes the robot's pose from a line crossing of both sensors.
+     *
+     * @param leftPose
+     *            the odometer's pose {x, y, theta} when the left sensor crossed
+     *            the line
+     * @param rightPose
+     *            the odometer's pose {x, y, theta} when the right sensor crossed
+     *            the line
+     * @return the corrected pose {x, y, theta} at the later of the two crossings,
+     *         where only the coordinate across the line is corrected, or null if
+     *         the crossing can't be trusted
+     */
+    public double[] correct(double[] leftPose, double[] rightPose) {
+        boolean leftFirst = travelled(leftPose, rightPose, leftPose[2]) >= 0;
+        double[] later = leftFirst ? rightPose : leftPose;
+        double heading = later[2];
+        double d = travelled(leftPose, rightPose, heading);
+
+        // which line did the sensors cross?
+        double[] leftSensor = sensorPosition(leftPose, true, leftPose[2]);
+        double[] rightSensor = sensorPosition(rightPose, false, rightPose[2]);
+        double leftToVertical = distanceToLine(leftSensor[0]);
+        double leftToHorizontal = distanceToLine(leftSensor[1]);
+        double rightToVertical = distanceToLine(rightSensor[0]);
+        double rightToHorizontal = distanceToLine(rightSensor[1]);
+        if ((leftToVertical < INTERSECTION_MARGIN && leftToHorizontal < INTERSECTION_MARGIN)
+                || (rightToVertical < INTERSECTION_MARGIN && rightToHorizontal < INTERSECTION_MARGIN)) {
+            return null;
+        }
+        boolean vertical = leftToVertical + rightToVertical < leftToHorizontal + rightToHorizontal;
+
+        // the angle between the robot and the line must be large enough
+        double crossingAngle = vertical ? Math.abs(Math.sin(Math.toRadians(heading)))
+                : Math.abs(Math.cos(Math.toRadians(heading)));
+        if (crossingAngle < Math.sin(Math.toRadians(MIN_CROSSING_ANGLE))) {
+            return null;
+        }
+
+        double theta = vertical ? Math.toDegrees(Math.atan2(sensorSpacing, -d))
+                : Math.toDegrees(Math.atan2(d, sensorSpacing));
+        theta = (theta + 360) % 360;
+        // the other solution is on the opposite side
+        double other = (theta + 180) % 360;
+        if (Math.abs(angleDifference(heading, other)) < Math.abs(angleDifference(heading, theta))) {
+            theta = other;
+        }
+        if (Math.abs(angleDifference(heading, theta)) > MAX_HEADING_ERROR) {
+            return null;
+        }
+
+        // position across the line, from the sensor that crossed last
+        double[] sensor = sensorPosition(later, !leftFirst, theta);
+        double[] corrected = new double[] { later[0], later[1], theta };
+        if (vertical) {
+            double line = Math.round(sensor[0] / tileSize) * tileSize;
+            if (Math.abs(line - sensor[0]) > MAX_POSITION_ERROR) {
+                return null;
+            }
+            corrected[0] += line - sensor[0];
+        } else {
+            double line = Math.round(sensor[1] / tileSize) * tileSize;
+            if (Math.abs(line - sensor[1]) > MAX_POSITION_ERROR) {
+                return null;
+            }
+            corrected[1] += line - sensor[1];
+        }
+        return corrected;
+    }
+
+    /**
+     * Computes the robot's position and heading error from the headings at which
+     * both back light sensors crossed the two lines of an intersection while the
+     * robot turned in place around it. The sensors turn on a circle of radius
+     * r = sqrt(L^2 + (w/2)^2), at bearings 180 +/- atan2(w/2, L) from the robot's
+     * heading. When the intersection is inside that circle, every sensor crosses
+     * the vertical line, the horizontal line, the vertical line and the
+     * horizontal line again, in that order or starting with the horizontal line.
+     * <p>
+     * The two crossings of the vertical line have bearings that add up to 180
+     * degrees and those of the horizontal line add up to 0, which gives the
+     * heading error. The bearings then give the distances to the lines.
+     *
+     * @param leftHeadings
+     *            the odometer's headings in degrees when the left sensor crossed
+     *            a line, in the order they were crossed
+     * @param rightHeadings
+     *            the odometer's headings in degrees when the right sensor crossed
+     *            a line, in the order they were crossed
+     * @param lineX
+     *            the x position of the vertical line in cm
+     * @param lineY
+     *            the y position of the horizontal line in cm
+     * @return the robot's position {x, y} and the error {dTheta} in degrees to add
+     *         to the odometer's heading, as {x, y, dTheta}, or null if the
+     *         crossings don't fit an intersection
+     */
+    public double[] solveIntersection(double[] leftHeadings, double[] rightHeadings, double lineX, double lineY) {
+        if (leftHeadings.length != 4 || rightHeadings.length != 4) {
+            return null;
+        }
+        double spread = Math.toDegrees(Math.atan2(sensorSpacing / 2, sensorOffset));
+        double radius = Math.hypot(sensorOffset, sensorSpacing / 2);
+        double[][] headings = { leftHeadings, rightHeadings };
+        double[] offsets = { 180 + spread, 180 - spread };
+
+        // the heading error from every line crossed by every sensor
+        boolean[] firstPairVertical = new boolean[2];
+        double errors = 0;
+        for (int s = 0; s < 2; s++) {
+            double[] h = headings[s];
+            double firstSum = h[0] + h[2] + 2 * offsets[s];
+            double secondSum = h[1] + h[3] + 2 * offsets[s];
+            firstPairVertical[s] = Math.abs(angleDifference(firstSum, 180)) < Math.abs(angleDifference(firstSum, 0));
+            double verticalError = angleDifference(firstPairVertical[s] ? firstSum : secondSum, 180) / 2;
+            double horizontalError = angleDifference(firstPairVertical[s] ? secondSum : firstSum, 0) / 2;
+            if (Math.abs(verticalError - horizontalError) > MAX_LINE_MISMATCH) {
+                return null;
+            }
+            errors += verticalError + horizontalError;
+        }
+        double dTheta = errors / 4;
+        if (Math.abs(dTheta) > MAX_HEADING_ERROR) {
+            return null;
+        }
+
+        // the distances to the lines from the corrected bearings
+        double x = 0;
+        double y = 0;
+        for (int s = 0; s < 2; s++) {
+            double[] h = headings[s];
+            int v = firstPairVertical[s] ? 0 : 1;
+            int hz = 1 - v;
+            x += lineX - radius * (Math.sin(Math.toRadians(h[v] + offsets[s] + dTheta))
+                    + Math.sin(Math.toRadians(h[v + 2] + offsets[s] + dTheta))) / 2;
+            y += lineY - radius * (Math.cos(Math.toRadians(h[hz] + offsets[s] + dTheta))
+                    + Math.cos(Math.toRadians(h[hz + 2] + offsets[s] + dTheta))) / 2;
+        }
+        return new double[] { x / 2, y / 2, dTheta };
+    }
+
+    /**
+     * @return the pose halfway between two poses, used as the pose at which a line
+     *         was crossed between two polls of the light sensors
+     */
+    static double[] midpoint(double[] a, double[] b) {
+        double dTheta = angleDifference(a[2], b[2]);
+        return new double[] { (a[0] + b[0]) / 2, (a[1] + b[1]) / 2, (a[2] + dTheta / 2 + 360) % 360 };
+    }
+
+    /**
+     * @return the signed distance travelled from one pose to the other along a
+     *         heading
+     */
+    private static double travelled(double[] from, double[] to, double heading) {
+        double h = Math.toRadians(heading);
+        return (to[0] - from[0]) * Math.sin(h) + (to[1] - from[1]) * Math.cos(h);
+    }
+
+    /**
+     * @return the position {x, y} of the left or right light sensor when the
+     *         robot is at a pose with a given heading
+     */
+    private double[] sensorPosition(double[] pose, boolean left, double heading) {
+        double h = Math.toRadians(heading);
+        double side = left ? -sensorSpacing / 2 : sensorSpacing / 2;
+        return new double[] {
+                pose[0] - sensorOffset * Math.sin(h) + side * Math.cos(h),
+                pose[1] - sensorOffset * Math.cos(h) - side * Math.sin(h) };
+    }
+
+    /**
+     * @return the distance from a coordinate to the closest grid line
+     */
+    private double distanceToLine(double coordinate) {
+        return Math.abs(coordinate - Math.round(coordinate / tileSize) * tileSize);
+    }
+
+    /**
+     * @return the signed smallest angle in degrees from one heading to another
+     */
+    private static double angleDifference(double from, double to) {
+        double d = ((to - from) % 360 + 360) % 360;
+        return d > 180 ? d - 360 : d;
+    }
+}
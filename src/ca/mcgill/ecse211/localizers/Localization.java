@@ -2,6 +2,9 @@ package ca.mcgill.ecse211.localizers;
 
 import ca.mcgill.ecse211.Main;
 import ca.mcgill.ecse211.WiFiClient.WifiConnection;
+import ca.mcgill.ecse211.navigators.FieldMap;
+import ca.mcgill.ecse211.navigators.MotionCommand;
+import ca.mcgill.ecse211.navigators.MotionFuture;
 import ca.mcgill.ecse211.navigators.MovementController;
 import ca.mcgill.ecse211.odometer.Odometer;
 import ca.mcgill.ecse211.sensors.LightDifferentialFilter;
@@ -13,18 +16,63 @@ import lejos.utility.Delay;
  * 
  * @author Julian Armour
  * @since March 4, 2019
- * @version 2
+ * @version 5
  */
 public class Localization {
 
     private static final long       US_POLL_PERIOD              = 100;
     private static final int        MAX_DIST                    = 255;
     private static final double     EDGE_THRESHOLD              = 55.0;
+    // period (ms) of the distance samples recorded during a single rotation
+    private static final long       US_PROFILE_PERIOD           = 30;
+    private static final int        US_PROFILE_CAPACITY         = 400;
+    // extra rotation (deg) so the recorded profile covers a full turn
+    private static final double     US_PROFILE_MARGIN           = 15;
+    // heading (deg) of the middle of the corner's walls, seen from the corner tile
+    private static final double     CORNER_HEADING              = 225;
+    // a sensor is ignored for this many degrees after seeing a line during a turn
+    private static final double     LINE_DEBOUNCE_ANGLE         = 12;
+    // extra rotation (deg) so a line right under a light sensor at the start of
+    // rotationLightLocalization is crossed again at the end
+    private static final double     LIGHT_ROTATION_MARGIN       = 15;
     private static int              LIGHT_POLLING_PERIOD        = 20;
     private static float            FIRST_DIFFERENCE_THRESHOLD  = 4.0f;
     private static float            SECOND_DIFFERENCE_THRESHOLD = 1.5f;
     private static final int        SLOW_SPEED                  = 45;
     private static final int        FAST_SPEED                  = 200;
+    private static final int        LINE_SPEED                  = 150;
+    // time (ms) from a sensor crossing the edge of a line to the line being seen,
+    // half a polling period plus the sensor's own delay
+    private static final long       LINE_DETECTION_LATENCY      = 15;
+    // speed (deg/sec) at which the wheels are turned back to where the line was seen
+    private static final int        LINE_RETURN_SPEED           = 100;
+    // largest distance (cm) between the two sensors' crossings of the same line
+    private static final double     MAX_CROSSING_GAP            = Main.TILE_SIZE / 2;
+    // distance (cm) to drive past a rejected line before looking for another
+    private static final double     LINE_CLEARANCE              = 3;
+    private static final int        PARTICLES                   = 200;
+    // spread (deg) of the particles' headings around the odometer's heading
+    private static final double     PARTICLE_HEADING_SPREAD     = 15;
+    // time (ms) during which a sensor is ignored after seeing a line, the far
+    // edge of the line would count it twice
+    private static final long       PARTICLE_LINE_DEBOUNCE      = 300;
+    // the particles have converged when they are closer than this (cm, deg)
+    private static final double     PARTICLE_POSITION_TOLERANCE = 2.5;
+    private static final double     PARTICLE_HEADING_TOLERANCE  = 4;
+    // standard deviations (cm, deg) of the pose after squaring up on a line
+    private static final double     QUICK_POSITION_SIGMA        = 0.5;
+    private static final double     QUICK_THETA_SIGMA           = 0.5;
+    // standard deviations (cm, deg) of the pose after a line crossed at an angle
+    private static final double     LINE_POSITION_SIGMA         = 1;
+    private static final double     LINE_THETA_SIGMA            = 1;
+    // assumed duration (ms) of a quick localization until one has been timed
+    private static final long       QUICK_LOCALIZATION_TIME     = 4500;
+    /**
+     * If true, {@link #quickThetaCorrection()} stops on the lines in a single fast
+     * pass and turns each wheel back to where its sensor saw the line. If false,
+     * it makes a fast pass followed by a slow one.
+     */
+    public static boolean           SINGLE_PASS_LINE_STOP       = true;
 
     private MovementController      movCon;
     private Odometer                odo;
@@ -32,6 +80,15 @@ public class Localization {
     private LightDifferentialFilter dLTleft;
     private LightDifferentialFilter dLTright;
     private int                     startingCorner;
+    private GridLineGeometry        gridGeometry;
+    private PassiveLineCorrector    passiveCorrector;
+    private ParticleFilter          particleFilter;
+    private RangeProfile            rangeProfile;
+    private PoseUncertainty         uncertainty;
+    private int                     localizationsPerformed;
+    private int                     localizationsSkipped;
+    private long                    localizationTime;
+    private long                    timeSaved;
 
     /**
      * 
@@ -59,15 +116,139 @@ public class Localization {
         this.dLTleft = leftLightDiff;
         this.dLTright = rightLightDiff;
         this.startingCorner = startingCorner;
+        this.gridGeometry = new GridLineGeometry(
+                Main.TILE_SIZE, Main.LT_SENSOR_TO_WHEELBASE, Main.LT_SENSOR_SPACING);
+        this.particleFilter = new ParticleFilter(
+                PARTICLES, Main.TILE_SIZE, FieldMap.FIELD_WIDTH * Main.TILE_SIZE,
+                FieldMap.FIELD_HEIGHT * Main.TILE_SIZE, Main.LT_SENSOR_TO_WHEELBASE, Main.LT_SENSOR_SPACING,
+                System.currentTimeMillis());
+        this.rangeProfile = new RangeProfile(US_PROFILE_CAPACITY);
+        this.uncertainty = new PoseUncertainty(odometer);
+    }
+
+    /**
+     * @return the {@link PoseUncertainty} of the odometer, which every routine
+     *         here shrinks after correcting the odometer
+     * 
+     * @author Julian Armour
+     * @since April 12, 2019
+     */
+    public PoseUncertainty getUncertainty() {
+        return uncertainty;
+    }
+
+    /**
+     * @param passiveCorrector
+     *            the {@link PassiveLineCorrector} to pause while this runs its
+     *            routines, which would otherwise correct the odometer twice from
+     *            the same lines
+     * 
+     * @author Julian Armour
+     * @since April 11, 2019
+     */
+    public void setPassiveCorrector(PassiveLineCorrector passiveCorrector) {
+        this.passiveCorrector = passiveCorrector;
+        passiveCorrector.setUncertainty(uncertainty);
+    }
+
+    /**
+     * Pauses the {@link PassiveLineCorrector}, if there is one.
+     * 
+     * @return true if it was correcting the odometer and should be resumed
+     */
+    private boolean pausePassiveCorrection() {
+        if (passiveCorrector == null || !passiveCorrector.isEnabled()) {
+            return false;
+        }
+        passiveCorrector.setEnabled(false);
+        return true;
+    }
+
+    /**
+     * Resumes the {@link PassiveLineCorrector} if it was paused by
+     * {@link #pausePassiveCorrection()}.
+     */
+    private void resumePassiveCorrection(boolean resume) {
+        if (resume) {
+            passiveCorrector.setEnabled(true);
+        }
     }
 
     /**
      * Will make the robot perform a quick subroutine to correct the robot's
-     * heading. The robot will move forward until the black lines are detected. It
-     * performs two passes, the first one is fast to get a decent but imperfect
-     * correction. The second is much slower and much more accurate.
+     * heading. The robot will move forward until the black lines are detected and
+     * square itself with them, see {@link #SINGLE_PASS_LINE_STOP}.
      */
     public void quickThetaCorrection() {
+        boolean resume = pausePassiveCorrection();
+        if (SINGLE_PASS_LINE_STOP) {
+            singlePassThetaCorrection();
+        } else {
+            twoPassThetaCorrection();
+        }
+        odo.setTheta(movCon.roundAngle());
+        uncertainty.localizedTheta(QUICK_THETA_SIGMA);
+        resumePassiveCorrection(resume);
+    }
+
+    /**
+     * Drives forward fast until both back sensors see a line. Every wheel is
+     * stopped as soon as its sensor sees the line, but it can't stop right away
+     * and overshoots. The tacho count of the wheel when its sensor crossed the
+     * line is taken from the count when the line was seen, minus the wheel's
+     * speed times the detection latency. Both wheels are then turned back to
+     * these counts, so the robot ends square with the line without a second,
+     * slow pass.
+     * 
+     * @author Julian Armour
+     * @since April 13, 2019
+     */
+    private void singlePassThetaCorrection() {
+        boolean leftDetected = false;
+        boolean rightDetected = false;
+        int leftLine = 0;
+        int rightLine = 0;
+
+        dLTleft.flush();
+        dLTright.flush();
+        movCon.driveForward(FAST_SPEED);
+        while (!leftDetected || !rightDetected) {
+            if (!leftDetected && Math.abs(dLTleft.getDeltaL()) > FIRST_DIFFERENCE_THRESHOLD) {
+                leftLine = lineTachoCount(false);
+                movCon.stopMotor(false, true);
+                leftDetected = true;
+            }
+            if (!rightDetected && Math.abs(dLTright.getDeltaL()) > FIRST_DIFFERENCE_THRESHOLD) {
+                rightLine = lineTachoCount(true);
+                movCon.stopMotor(true, true);
+                rightDetected = true;
+            }
+            try {
+                Thread.sleep(LIGHT_POLLING_PERIOD);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        movCon.stopMotors();
+        movCon.rotateWheelsTo(leftLine, rightLine, LINE_RETURN_SPEED);
+    }
+
+    /**
+     * @param right
+     *            true for the right wheel, false for the left wheel
+     * @return the wheel's tacho count when its sensor crossed the line that was
+     *         just seen
+     */
+    private int lineTachoCount(boolean right) {
+        return movCon.getTachoCount(right)
+                - (int) Math.round(movCon.getRotationSpeed(right) * LINE_DETECTION_LATENCY / 1000.0);
+    }
+
+    /**
+     * Drives to the lines in two passes, the first one is fast to get a decent but
+     * imperfect correction. The second is much slower and much more accurate.
+     */
+    private void twoPassThetaCorrection() {
         Delay.msDelay(500);
         for (int i = 0; i < 2; i++) {
             boolean RLineDetected = false;
@@ -134,8 +315,6 @@ public class Localization {
                 movCon.driveDistance(-2.5);
             }
         }
-
-        odo.setTheta(movCon.roundAngle());
     }
 
     /**
@@ -146,6 +325,7 @@ public class Localization {
      * @since March 22, 2019
      */
     public void quickLocalization() {
+        boolean resume = pausePassiveCorrection();
         // turn to the nearest right angle
         movCon.turnTo(movCon.roundAngle());
         // perform quick theta correction
@@ -171,6 +351,218 @@ public class Localization {
         default:
             break;
         }
+        if (movCon.roundAngle() % 180 == 0) {
+            uncertainty.localizedY(QUICK_POSITION_SIGMA);
+        } else {
+            uncertainty.localizedX(QUICK_POSITION_SIGMA);
+        }
+        resumePassiveCorrection(resume);
+    }
+
+    /**
+     * Performs a {@link #quickLocalization()} only if the odometer could be too
+     * far off by the end of the next leg, as predicted by the
+     * {@link PoseUncertainty}. The robot should already face the leg's heading.
+     * Every skipped localization counts towards the time saved, estimated from the
+     * average duration of the ones performed.
+     * 
+     * @param legDistance
+     *            the length in cm of the leg about to be driven
+     * @param tolerance
+     *            the largest error in cm allowed at the end of the leg
+     * @return true if the robot localized
+     * 
+     * @author Julian Armour
+     * @since April 12, 2019
+     */
+    public boolean quickLocalizationIfNeeded(double legDistance, double tolerance) {
+        if (uncertainty.withinTolerance(movCon.roundAngle(), legDistance, tolerance)) {
+            localizationsSkipped++;
+            timeSaved += localizationsPerformed == 0 ? QUICK_LOCALIZATION_TIME
+                    : localizationTime / localizationsPerformed;
+            return false;
+        }
+        long start = System.currentTimeMillis();
+        quickLocalization();
+        localizationTime += System.currentTimeMillis() - start;
+        localizationsPerformed++;
+        return true;
+    }
+
+    /**
+     * @return how many localizations {@link #quickLocalizationIfNeeded(double, double)}
+     *         performed, skipped and the time in ms it saved
+     */
+    public String getSchedulerReport() {
+        return "localized " + localizationsPerformed + ", skipped " + localizationsSkipped + ", saved "
+                + timeSaved / 1000 + " s";
+    }
+
+    /**
+     * Corrects the odometer from the next grid line crossed by both back light
+     * sensors, at whatever heading the robot is facing. Unlike
+     * {@link #quickLocalization()}, the robot doesn't need to face a right angle
+     * and doesn't stop to square itself with the line, so it can be used while
+     * driving diagonally. The heading and the position across the line are
+     * corrected, see {@link GridLineGeometry}. Lines crossed too close to an
+     * intersection or at too shallow an angle are skipped and the robot carries on
+     * to the next one.
+     * 
+     * @param maxDistance
+     *            the farthest the robot drives forward looking for a line, in cm
+     * @return true if the odometer was corrected
+     * 
+     * @author Julian Armour
+     * @since April 10, 2019
+     */
+    public boolean lineLocalization(double maxDistance) {
+        boolean resume = pausePassiveCorrection();
+        double[] start = odo.getXYT();
+        double[] previous = start;
+        double[] leftPose = null;
+        double[] rightPose = null;
+        // how far the robot had driven when each sensor crossed its line
+        double leftAt = 0;
+        double rightAt = 0;
+        boolean corrected = false;
+
+        dLTleft.flush();
+        dLTright.flush();
+        movCon.driveForward(LINE_SPEED);
+        while (!corrected) {
+            double[] pose = odo.getXYT();
+            double travelled = distanceFrom(start, pose);
+            if (travelled > maxDistance) {
+                break;
+            }
+            // both filters are polled every time so their differences stay fresh
+            float deltaL = dLTleft.getDeltaL();
+            float deltaR = dLTright.getDeltaL();
+            // the line was crossed somewhere between the last two polls, and the
+            // far edge of a line a sensor just crossed is ignored
+            if (leftPose == null && travelled > leftAt + LINE_CLEARANCE
+                    && Math.abs(deltaL) > FIRST_DIFFERENCE_THRESHOLD) {
+                leftPose = GridLineGeometry.midpoint(previous, pose);
+                leftAt = travelled;
+            }
+            if (rightPose == null && travelled > rightAt + LINE_CLEARANCE
+                    && Math.abs(deltaR) > FIRST_DIFFERENCE_THRESHOLD) {
+                rightPose = GridLineGeometry.midpoint(previous, pose);
+                rightAt = travelled;
+            }
+
+            if (leftPose != null && rightPose != null) {
+                boolean leftIsLater = leftAt > rightAt;
+                double[] later = leftIsLater ? leftPose : rightPose;
+                double[] fix = gridGeometry.correct(leftPose, rightPose);
+                if (fix != null) {
+                    // apply the correction relative to the crossing, the robot has moved since
+                    double dTheta = ((fix[2] - later[2]) % 360 + 540) % 360 - 180;
+                    odo.update(fix[0] - later[0], fix[1] - later[1], dTheta);
+                    // only the position across the line was corrected
+                    if (fix[0] != later[0]) {
+                        uncertainty.localizedX(LINE_POSITION_SIGMA);
+                    } else {
+                        uncertainty.localizedY(LINE_POSITION_SIGMA);
+                    }
+                    uncertainty.localizedTheta(LINE_THETA_SIGMA);
+                    corrected = true;
+                } else if (leftIsLater) {
+                    // the sensors may have crossed different lines, keep the latest crossing
+                    rightPose = null;
+                } else {
+                    leftPose = null;
+                }
+            } else if (leftPose != null && travelled - leftAt > MAX_CROSSING_GAP) {
+                // the right sensor missed this line
+                leftPose = null;
+            } else if (rightPose != null && travelled - rightAt > MAX_CROSSING_GAP) {
+                rightPose = null;
+            }
+
+            previous = pose;
+            try {
+                Thread.sleep(LIGHT_POLLING_PERIOD);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        movCon.stopMotors();
+        resumePassiveCorrection(resume);
+        return corrected;
+    }
+
+    /**
+     * Relocalizes the robot with a {@link ParticleFilter} while it makes a full
+     * turn in place. The particles start spread around the odometer's pose and
+     * are weighted by the distances to the walls and by the lines the back light
+     * sensors sweep over. Unlike the other routines, the robot doesn't need to be
+     * near a line or facing a right angle, so this can be used when the odometer
+     * is off by a lot, like after a collision.
+     * 
+     * @param positionSpread
+     *            how far off (cm) the odometer's position could be
+     * @return true if the particles converged and the odometer was updated
+     * 
+     * @author Julian Armour
+     * @since April 11, 2019
+     */
+    public boolean particleLocalization(double positionSpread) {
+        boolean resume = pausePassiveCorrection();
+        particleFilter.spread(odo.getXYT(), positionSpread, PARTICLE_HEADING_SPREAD);
+        med.flush();
+        dLTleft.flush();
+        dLTright.flush();
+
+        MotionFuture rotation = movCon.submit(MotionCommand.rotateAngle(360, true));
+        long lastRange = 0;
+        long lastLeftLine = 0;
+        long lastRightLine = 0;
+        while (!rotation.isDone()) {
+            long now = System.currentTimeMillis();
+            particleFilter.predict(odo.getXYT());
+            float deltaL = dLTleft.getDeltaL();
+            float deltaR = dLTright.getDeltaL();
+            if (Math.abs(deltaL) > FIRST_DIFFERENCE_THRESHOLD && now - lastLeftLine > PARTICLE_LINE_DEBOUNCE) {
+                particleFilter.lineCrossed(true);
+                lastLeftLine = now;
+            }
+            if (Math.abs(deltaR) > FIRST_DIFFERENCE_THRESHOLD && now - lastRightLine > PARTICLE_LINE_DEBOUNCE) {
+                particleFilter.lineCrossed(false);
+                lastRightLine = now;
+            }
+            if (now - lastRange >= US_POLL_PERIOD) {
+                particleFilter.rangeMeasured(Math.min(med.getFilteredDistance(), MAX_DIST));
+                lastRange = now;
+            }
+            particleFilter.resampleIfNeeded();
+
+            try {
+                Thread.sleep(LIGHT_POLLING_PERIOD);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        particleFilter.predict(odo.getXYT());
+
+        double[] deviation = particleFilter.deviation();
+        boolean converged = deviation[0] < PARTICLE_POSITION_TOLERANCE && deviation[1] < PARTICLE_HEADING_TOLERANCE;
+        if (converged) {
+            double[] estimate = particleFilter.estimate();
+            odo.setXYT(estimate[0], estimate[1], estimate[2]);
+            uncertainty.localizedX(deviation[0]);
+            uncertainty.localizedY(deviation[0]);
+            uncertainty.localizedTheta(deviation[1]);
+        }
+        resumePassiveCorrection(resume);
+        return converged;
+    }
+
+    /**
+     * @return the distance between the positions of two poses
+     */
+    private static double distanceFrom(double[] a, double[] b) {
+        return Math.hypot(b[0] - a[0], b[1] - a[1]);
     }
 
     /**
@@ -180,11 +572,13 @@ public class Localization {
      * @author Julian Armour
      */
     public void completeQuickLocalization() {
+        boolean resume = pausePassiveCorrection();
         quickLocalization();
         movCon.driveDistance(-Main.LT_SENSOR_TO_WHEELBASE);
         movCon.rotateAngle(90, false, false);
         quickLocalization();
         movCon.driveDistance(-Main.LT_SENSOR_TO_WHEELBASE);
+        resumePassiveCorrection(resume);
     }
 
     /**
@@ -237,10 +631,132 @@ public class Localization {
         default:
             break;
         }
+        uncertainty.localizedX(QUICK_POSITION_SIGMA);
+        uncertainty.localizedY(QUICK_POSITION_SIGMA);
         movCon.driveDistance(-1 * Main.LT_SENSOR_TO_WHEELBASE, FAST_SPEED, 1000, false);
         System.out.println("Set the odo to: " + odo.getXYT()[0] + odo.getXYT()[1]);
     }
 
+    /**
+     * Light localization routine to be called after the ultrasonic localization,
+     * in a single turn instead of the five motions of
+     * {@link #initialLightLocalization()}. The robot drives diagonally towards
+     * the starting corner's intersection until it is close to it, then makes a
+     * full turn in place. The headings at which both back sensors cross the two
+     * lines give the position and the heading error, see
+     * {@link GridLineGeometry#solveIntersection(double[], double[], double, double)}.
+     * The robot then ends on the intersection, facing the same way as after
+     * {@link #initialLightLocalization()}.
+     * <p>
+     * If the crossings don't fit the intersection, the robot goes back and falls
+     * back to {@link #initialLightLocalization()}.
+     * 
+     * @author Julian Armour
+     * @since April 12, 2019
+     */
+    public void rotationLightLocalization() {
+        // the heading after the ultrasonic localization and the corner's intersection
+        int cornerHeading;
+        double[] intersection;
+        switch (startingCorner) {
+        case 1:
+            cornerHeading = 270;
+            intersection = new double[] { 14 * Main.TILE_SIZE, Main.TILE_SIZE };
+            break;
+        case 2:
+            cornerHeading = 180;
+            intersection = new double[] { 14 * Main.TILE_SIZE, 8 * Main.TILE_SIZE };
+            break;
+        case 3:
+            cornerHeading = 90;
+            intersection = new double[] { Main.TILE_SIZE, 8 * Main.TILE_SIZE };
+            break;
+        default:
+            cornerHeading = 0;
+            intersection = new double[] { Main.TILE_SIZE, Main.TILE_SIZE };
+            break;
+        }
+
+        // drive towards the intersection until the sensors reach its lines
+        movCon.turnTo((cornerHeading + 45) % 360);
+        double[] start = odo.getXYT();
+        dLTleft.flush();
+        dLTright.flush();
+        movCon.driveForward(LINE_SPEED);
+        while (Math.abs(dLTleft.getDeltaL()) <= FIRST_DIFFERENCE_THRESHOLD
+                && Math.abs(dLTright.getDeltaL()) <= FIRST_DIFFERENCE_THRESHOLD
+                && distanceFrom(start, odo.getXYT()) < 1.5 * Main.TILE_SIZE) {
+            try {
+                Thread.sleep(LIGHT_POLLING_PERIOD);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        movCon.stopMotors();
+        double approach = distanceFrom(start, odo.getXYT());
+
+        // record the headings of the first four lines each sensor crosses
+        double[] left = new double[4];
+        double[] right = new double[4];
+        int leftCount = 0;
+        int rightCount = 0;
+        dLTleft.flush();
+        dLTright.flush();
+        double[] previous = odo.getXYT();
+        MotionFuture rotation = movCon.submit(MotionCommand.rotateAngle(360 + LIGHT_ROTATION_MARGIN, true));
+        while (!rotation.isDone()) {
+            double[] pose = odo.getXYT();
+            float deltaL = dLTleft.getDeltaL();
+            float deltaR = dLTright.getDeltaL();
+            // the line was crossed somewhere between the last two polls
+            double crossing = GridLineGeometry.midpoint(previous, pose)[2];
+            if (leftCount < 4 && Math.abs(deltaL) > FIRST_DIFFERENCE_THRESHOLD
+                    && (leftCount == 0 || turnedFrom(left[leftCount - 1], crossing) > LINE_DEBOUNCE_ANGLE)) {
+                left[leftCount++] = crossing;
+            }
+            if (rightCount < 4 && Math.abs(deltaR) > FIRST_DIFFERENCE_THRESHOLD
+                    && (rightCount == 0 || turnedFrom(right[rightCount - 1], crossing) > LINE_DEBOUNCE_ANGLE)) {
+                right[rightCount++] = crossing;
+            }
+            previous = pose;
+            try {
+                Thread.sleep(LIGHT_POLLING_PERIOD);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+
+        double[] solution = null;
+        if (leftCount == 4 && rightCount == 4) {
+            solution = gridGeometry.solveIntersection(left, right, intersection[0], intersection[1]);
+        }
+        if (solution == null) {
+            System.out.println("Intersection not found, localizing on each line");
+            movCon.turnTo((cornerHeading + 45) % 360);
+            movCon.driveDistance(-approach);
+            movCon.turnTo(cornerHeading);
+            initialLightLocalization();
+            return;
+        }
+        odo.setXYT(solution[0], solution[1], (odo.getXYT()[2] + solution[2] + 360) % 360);
+        uncertainty.localizedX(QUICK_POSITION_SIGMA);
+        uncertainty.localizedY(QUICK_POSITION_SIGMA);
+        uncertainty.localizedTheta(QUICK_THETA_SIGMA);
+        double[] pose = odo.getXYT();
+        if (Math.hypot(intersection[0] - pose[0], intersection[1] - pose[1]) > 1) {
+            movCon.travelTo(intersection[0], intersection[1], false);
+        }
+        movCon.turnTo((cornerHeading + 90) % 360);
+    }
+
+    /**
+     * @return how many degrees the robot turned clockwise from one heading to
+     *         another, in [0, 360)
+     */
+    private static double turnedFrom(double from, double to) {
+        return ((to - from) % 360 + 360) % 360;
+    }
+
     /**
      * The subroutine for correcting the odometer's angle. If the robot is placed at
      * a corner tile with walls on each side of the corner, then the robot will
@@ -309,6 +825,60 @@ public class Localization {
          * correct the odometer. Note: the motor's didn't need to be stopped to perform
          * the update since the odometer is thread-safe.
          */
+        correctCornerHeading(dTheta);
+    }
+
+    /**
+     * Corrects the odometer's angle like {@link #initialUSLocalization()}, but
+     * with a single rotation. The distances and headings are recorded during one
+     * full turn and the edges of the corner's walls are found afterwards, between
+     * samples, instead of while polling. The delay of the
+     * {@link MedianDistanceSensor}'s filter is taken out by matching every
+     * distance with the heading the robot had half a filter window earlier.
+     * <p>
+     * If the walls can't be found, it falls back to
+     * {@link #initialUSLocalization()}.
+     * 
+     * @author Julian Armour
+     * @since April 12, 2019
+     */
+    public void singleRotationUSLocalization() {
+        med.flush();
+        rangeProfile.clear();
+
+        MotionFuture rotation = movCon.submit(MotionCommand.rotateAngle(360 + US_PROFILE_MARGIN, true));
+        while (!rotation.isDone()) {
+            float distance = Math.min(med.getFilteredDistance(), MAX_DIST);
+            rangeProfile.add(System.currentTimeMillis(), odo.getXYT()[2], distance);
+            try {
+                Thread.sleep(US_PROFILE_PERIOD);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+
+        // the median is about half a window of samples old
+        long lag = med.bufferSize() / 2 * US_PROFILE_PERIOD;
+        double[] edges = rangeProfile.findValley(EDGE_THRESHOLD, lag);
+        if (edges == null) {
+            System.out.println("Walls not found, rotating again");
+            initialUSLocalization();
+            return;
+        }
+        // the robot turned clockwise, so the walls go from the falling to the rising edge
+        double width = (edges[1] - edges[0] + 360) % 360;
+        double middle = edges[0] + width / 2;
+        correctCornerHeading(CORNER_HEADING - middle);
+    }
+
+    /**
+     * Adds an error to the odometer's angle, faces the first wall and sets the
+     * angle the robot then has at its starting corner.
+     * 
+     * @param dTheta
+     *            the odometer's angle error in degrees
+     */
+    private void correctCornerHeading(double dTheta) {
         odo.update(0, 0, dTheta);
         // face "North"
         movCon.turnTo(0.0);
@@ -0,0 +1,357 @@
+package ca.mcgill.ecse211.localizers;
+
+import java.util.Random;
+
+/**
+ * A Monte Carlo localizer for the competition field. Every particle is a guess
+ * of the robot's pose {x, y, theta}. The particles are moved with the
+ * odometer's motion, plus noise, and weighted by how well they explain what the
+ * sensors measure:
+ * <ul>
+ * <li>a back light sensor crossing a line: the sensor should be on a grid
+ * line</li>
+ * <li>an ultrasonic distance: it should match the distance to the field's walls
+ * in front of the robot, or be shorter if something (like a can) is in the
+ * way</li>
+ * </ul>
+ * The particles are resampled with low variance resampling when too few of
+ * them carry most of the weight. All the particle arrays are allocated once.
+ * <p>
+ * The filter isn't thread-safe, it should be used by a single thread.
+ * 
+ * @author Julian Armour
+ * @since April 11, 2019
+ * @version 1
+ */
+public class ParticleFilter {
+    // standard deviation of the motion noise, per cm driven and per degree turned
+    private static final double DISTANCE_NOISE     = 0.05;
+    private static final double ROTATION_NOISE     = 0.1;
+    // heading noise (deg) per cm driven, wheel slip drifts the heading
+    private static final double DRIFT_NOISE        = 0.02;
+    // standard deviation (cm) of a light sensor's position when it sees a line
+    private static final double LINE_SIGMA         = 1.5;
+    // standard deviation (cm) of an ultrasonic distance
+    private static final double RANGE_SIGMA        = 3;
+    // ultrasonic distances (cm) longer than this aren't reliable
+    private static final double MAX_RANGE          = 120;
+    // likelihood of a reading shorter than expected (an obstacle) and of any
+    // other bad reading
+    private static final double SHORT_LIKELIHOOD   = 0.2;
+    private static final double RANDOM_LIKELIHOOD  = 0.02;
+    // likelihood floor of a line crossing, in case it was a false detection
+    private static final double LINE_FALSE_ALARM   = 0.05;
+    // noise (cm, deg) added to resampled particles so copies of the same particle
+    // spread out again
+    private static final double RESAMPLE_JITTER_XY = 0.5;
+    private static final double RESAMPLE_JITTER_T  = 1;
+
+    private int                 n;
+    private double              tileSize;
+    private double              fieldWidth;
+    private double              fieldHeight;
+    private double              sensorOffset;
+    private double              sensorSpacing;
+    private Random              random;
+
+    private double[]            x;
+    private double[]            y;
+    private double[]            theta;
+    private double[]            weight;
+    // buffers for resampling
+    private double[]            newX;
+    private double[]            newY;
+    private double[]            newTheta;
+    // the odometer's pose at the last prediction
+    private double[]            lastOdometry;
+
+    /**
+     * @param particles
+     *            the number of particles
+     * @param tileSize
+     *            the distance between grid lines in cm
+     * @param fieldWidth
+     *            the distance in cm between the field's left and right walls
+     * @param fieldHeight
+     *            the distance in cm between the field's bottom and top walls
+     * @param sensorOffset
+     *            the distance in cm from the wheel base to the back light sensors
+     * @param sensorSpacing
+     *            the distance in cm between the back light sensors
+     * @param seed
+     *            the seed of the random number generator
+     */
+    public ParticleFilter(int particles, double tileSize, double fieldWidth, double fieldHeight,
+            double sensorOffset, double sensorSpacing, long seed) {
+        this.n = particles;
+        this.tileSize = tileSize;
+        this.fieldWidth = fieldWidth;
+        this.fieldHeight = fieldHeight;
+        this.sensorOffset = sensorOffset;
+        this.sensorSpacing = sensorSpacing;
+        this.random = new Random(seed);
+        this.x = new double[n];
+        this.y = new double[n];
+        this.theta = new double[n];
+        this.weight = new double[n];
+        this.newX = new double[n];
+        this.newY = new double[n];
+        this.newTheta = new double[n];
+    }
+
+    /**
+     * Spreads the particles around a pose.
+     * 
+     * @param odometry
+     *            the odometer's pose {x, y, theta}, where the particles are
+     *            spread
+     * @param positionSigma
+     *            the standard deviation in cm of the particles' positions
+     * @param thetaSigma
+     *            the standard deviation in degrees of the particles' headings
+     */
+    public void spread(double[] odometry, double positionSigma, double thetaSigma) {
+        for (int i = 0; i < n; i++) {
+            x[i] = odometry[0] + positionSigma * random.nextGaussian();
+            y[i] = odometry[1] + positionSigma * random.nextGaussian();
+            theta[i] = wrap(odometry[2] + thetaSigma * random.nextGaussian());
+            weight[i] = 1.0 / n;
+        }
+        lastOdometry = odometry.clone();
+    }
+
+    /**
+     * Spreads the particles uniformly over a rectangle, with any heading.
+     * 
+     * @param odometry
+     *            the odometer's pose {x, y, theta}
+     * @param lowerLeft
+     *            the lower left corner {x, y} of the rectangle in cm
+     * @param upperRight
+     *            the upper right corner {x, y} of the rectangle in cm
+     */
+    public void spreadUniformly(double[] odometry, double[] lowerLeft, double[] upperRight) {
+        for (int i = 0; i < n; i++) {
+            x[i] = lowerLeft[0] + (upperRight[0] - lowerLeft[0]) * random.nextDouble();
+            y[i] = lowerLeft[1] + (upperRight[1] - lowerLeft[1]) * random.nextDouble();
+            theta[i] = 360 * random.nextDouble();
+            weight[i] = 1.0 / n;
+        }
+        lastOdometry = odometry.clone();
+    }
+
+    /**
+     * Moves the particles by the motion the odometer measured since the last
+     * call.
+     * 
+     * @param odometry
+     *            the odometer's pose {x, y, theta}
+     */
+    public void predict(double[] odometry) {
+        double h = Math.toRadians(lastOdometry[2]);
+        double dx = odometry[0] - lastOdometry[0];
+        double dy = odometry[1] - lastOdometry[1];
+        // the motion in the robot's frame: along and across its heading
+        double forward = dx * Math.sin(h) + dy * Math.cos(h);
+        double sideways = dx * Math.cos(h) - dy * Math.sin(h);
+        double rotation = angleDifference(lastOdometry[2], odometry[2]);
+        double distance = Math.abs(forward) + Math.abs(sideways);
+        lastOdometry = odometry.clone();
+        if (distance < 1e-6 && Math.abs(rotation) < 1e-6) {
+            return;
+        }
+
+        double distanceSigma = DISTANCE_NOISE * distance;
+        double rotationSigma = ROTATION_NOISE * Math.abs(rotation) + DRIFT_NOISE * distance;
+        for (int i = 0; i < n; i++) {
+            double f = forward + distanceSigma * random.nextGaussian();
+            double s = sideways + distanceSigma * random.nextGaussian();
+            double ph = Math.toRadians(theta[i]);
+            x[i] += f * Math.sin(ph) + s * Math.cos(ph);
+            y[i] += f * Math.cos(ph) - s * Math.sin(ph);
+            theta[i] = wrap(theta[i] + rotation + rotationSigma * random.nextGaussian());
+        }
+    }
+
+    /**
+     * Weighs the particles after a back light sensor saw a line.
+     * 
+     * @param left
+     *            true for the left sensor, false for the right one
+     */
+    public void lineCrossed(boolean left) {
+        double side = left ? -sensorSpacing / 2 : sensorSpacing / 2;
+        for (int i = 0; i < n; i++) {
+            double h = Math.toRadians(theta[i]);
+            double sx = x[i] - sensorOffset * Math.sin(h) + side * Math.cos(h);
+            double sy = y[i] - sensorOffset * Math.cos(h) - side * Math.sin(h);
+            double error = Math.min(distanceToLine(sx), distanceToLine(sy));
+            weight[i] *= Math.exp(-error * error / (2 * LINE_SIGMA * LINE_SIGMA)) + LINE_FALSE_ALARM;
+        }
+        normalize();
+    }
+
+    /**
+     * Weighs the particles with a distance measured by the ultrasonic sensor,
+     * which is assumed to be at the wheel base and to face forward.
+     * 
+     * @param distance
+     *            the measured distance in cm
+     */
+    public void rangeMeasured(double distance) {
+        if (distance >= MAX_RANGE) {
+            // nothing was seen, which says little since the walls can be missed
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            double expected = distanceToWall(x[i], y[i], theta[i]);
+            double error = distance - expected;
+            double likelihood = Math.exp(-error * error / (2 * RANGE_SIGMA * RANGE_SIGMA));
+            likelihood += error < 0 ? SHORT_LIKELIHOOD : RANDOM_LIKELIHOOD;
+            weight[i] *= likelihood;
+        }
+        normalize();
+    }
+
+    /**
+     * Resamples the particles if too few of them carry most of the weight.
+     * 
+     * @return true if the particles were resampled
+     */
+    public boolean resampleIfNeeded() {
+        double sumOfSquares = 0;
+        for (int i = 0; i < n; i++) {
+            sumOfSquares += weight[i] * weight[i];
+        }
+        if (1 / sumOfSquares > n / 2.0) {
+            return false;
+        }
+        resample();
+        return true;
+    }
+
+    /**
+     * Draws a new set of particles, each with a probability equal to its weight,
+     * using low variance resampling.
+     */
+    public void resample() {
+        double step = 1.0 / n;
+        double r = step * random.nextDouble();
+        double c = weight[0];
+        int i = 0;
+        for (int m = 0; m < n; m++) {
+            double u = r + m * step;
+            while (u > c && i < n - 1) {
+                i++;
+                c += weight[i];
+            }
+            newX[m] = x[i] + RESAMPLE_JITTER_XY * random.nextGaussian();
+            newY[m] = y[i] + RESAMPLE_JITTER_XY * random.nextGaussian();
+            newTheta[m] = wrap(theta[i] + RESAMPLE_JITTER_T * random.nextGaussian());
+        }
+        double[] swap = x;
+        x = newX;
+        newX = swap;
+        swap = y;
+        y = newY;
+        newY = swap;
+        swap = theta;
+        theta = newTheta;
+        newTheta = swap;
+        for (int m = 0; m < n; m++) {
+            weight[m] = step;
+        }
+    }
+
+    /**
+     * @return the weighted mean pose {x, y, theta} of the particles
+     */
+    public double[] estimate() {
+        double mx = 0;
+        double my = 0;
+        double sin = 0;
+        double cos = 0;
+        for (int i = 0; i < n; i++) {
+            mx += weight[i] * x[i];
+            my += weight[i] * y[i];
+            sin += weight[i] * Math.sin(Math.toRadians(theta[i]));
+            cos += weight[i] * Math.cos(Math.toRadians(theta[i]));
+        }
+        return new double[] { mx, my, wrap(Math.toDegrees(Math.atan2(sin, cos))) };
+    }
+
+    /**
+     * @return the weighted standard deviation {position, theta} of the particles
+     *         around the {@link #estimate()}, in cm and degrees
+     */
+    public double[] deviation() {
+        double[] mean = estimate();
+        double position = 0;
+        double heading = 0;
+        for (int i = 0; i < n; i++) {
+            double dx = x[i] - mean[0];
+            double dy = y[i] - mean[1];
+            double dt = angleDifference(mean[2], theta[i]);
+            position += weight[i] * (dx * dx + dy * dy);
+            heading += weight[i] * dt * dt;
+        }
+        return new double[] { Math.sqrt(position), Math.sqrt(heading) };
+    }
+
+    /**
+     * @return the distance in cm from a pose to the wall it faces
+     */
+    private double distanceToWall(double px, double py, double heading) {
+        double dx = Math.sin(Math.toRadians(heading));
+        double dy = Math.cos(Math.toRadians(heading));
+        double distance = Double.MAX_VALUE;
+        if (dx > 1e-9) {
+            distance = Math.min(distance, (fieldWidth - px) / dx);
+        } else if (dx < -1e-9) {
+            distance = Math.min(distance, -px / dx);
+        }
+        if (dy > 1e-9) {
+            distance = Math.min(distance, (fieldHeight - py) / dy);
+        } else if (dy < -1e-9) {
+            distance = Math.min(distance, -py / dy);
+        }
+        // a particle outside the field has the wall right in front of it
+        return Math.max(distance, 0);
+    }
+
+    /**
+     * @return the distance from a coordinate to the closest grid line
+     */
+    private double distanceToLine(double coordinate) {
+        return Math.abs(coordinate - Math.round(coordinate / tileSize) * tileSize);
+    }
+
+    /**
+     * Scales the weights so they add up to one. If every particle became
+     * impossible, the weights are reset.
+     */
+    private void normalize() {
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            total += weight[i];
+        }
+        for (int i = 0; i < n; i++) {
+            weight[i] = total > 0 ? weight[i] / total : 1.0 / n;
+        }
+    }
+
+    /**
+     * @return an angle in degrees in [0, 360)
+     */
+    private static double wrap(double angle) {
+        return (angle % 360 + 360) % 360;
+    }
+
+    /**
+     * @return the signed smallest angle in degrees from one heading to another
+     */
+    private static double angleDifference(double from, double to) {
+        double d = ((to - from) % 360 + 360) % 360;
+        return d > 180 ? d - 360 : d;
+    }
+}
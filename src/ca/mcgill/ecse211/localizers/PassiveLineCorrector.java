@@ -0,0 +1,224 @@
+package ca.mcgill.ecse211.localizers;
+
+import ca.mcgill.ecse211.Main;
+import ca.mcgill.ecse211.navigators.MovementController;
+import ca.mcgill.ecse211.odometer.Odometer;
+import ca.mcgill.ecse211.sensors.LightDifferentialFilter;
+
+/**
+ * Corrects the odometer from the grid lines the robot crosses while it drives
+ * normally, without stopping it. It watches both back light sensors and, when
+ * both have crossed the same line, snaps the heading and the position across
+ * the line with {@link GridLineGeometry}.
+ * <p>
+ * It has its own {@link LightDifferentialFilter}s, since the filters remember
+ * their last sample and can't be shared with {@link Localization}. It should be
+ * disabled while {@link Localization} runs one of its routines, which it does
+ * itself when given the corrector.
+ * 
+ * @author Julian Armour
+ * @since April 11, 2019
+ * @version 2
+ */
+public class PassiveLineCorrector implements Runnable {
+    private static final long       POLL_PERIOD          = 20;
+    private static final float      LINE_THRESHOLD       = 4.0f;
+    // largest distance (cm) between the two sensors' crossings of the same line
+    private static final double     MAX_CROSSING_GAP     = Main.TILE_SIZE / 2;
+    // distance (cm) to drive past a line before the same sensor looks again
+    private static final double     LINE_CLEARANCE       = 3;
+    // longest time (ms) between the two sensors' crossings of the same line
+    private static final long       MAX_CROSSING_TIME    = 2000;
+    // both wheels must turn forward faster than this (deg/sec) to be driving
+    private static final int        MIN_WHEEL_SPEED      = 20;
+    // and their speeds must differ by less than this fraction of their mean, the
+    // heading can't change between the two crossings
+    private static final double     MAX_SPEED_DIFFERENCE = 0.05;
+    // standard deviations (cm, deg) of the pose after a correction
+    private static final double     POSITION_SIGMA       = 1;
+    private static final double     THETA_SIGMA          = 1;
+
+    private Odometer                odo;
+    private MovementController      movCon;
+    private LightDifferentialFilter dLTleft;
+    private LightDifferentialFilter dLTright;
+    private GridLineGeometry        gridGeometry;
+    private PoseUncertainty         uncertainty;
+    private volatile boolean        enabled;
+    private volatile int            corrections;
+    private volatile double[]       lastCorrection;
+
+    /**
+     * @param odometer
+     *            the {@link Odometer}
+     * @param movementController
+     *            the {@link MovementController}, to tell if the robot drives
+     *            forward from the wheels' directions
+     * @param leftLightDiff
+     *            a left hind {@link LightDifferentialFilter} used only by this
+     *            corrector
+     * @param rightLightDiff
+     *            a right hind {@link LightDifferentialFilter} used only by this
+     *            corrector
+     */
+    public PassiveLineCorrector(Odometer odometer, MovementController movementController,
+            LightDifferentialFilter leftLightDiff, LightDifferentialFilter rightLightDiff) {
+        this.odo = odometer;
+        this.movCon = movementController;
+        this.dLTleft = leftLightDiff;
+        this.dLTright = rightLightDiff;
+        this.gridGeometry = new GridLineGeometry(
+                Main.TILE_SIZE, Main.LT_SENSOR_TO_WHEELBASE, Main.LT_SENSOR_SPACING);
+        this.enabled = false;
+        this.corrections = 0;
+    }
+
+    /**
+     * Starts or stops correcting the odometer. Crossings seen before it was
+     * disabled are forgotten.
+     * 
+     * @param enabled
+     *            true to correct the odometer
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param uncertainty
+     *            the {@link PoseUncertainty} to update after every correction, can
+     *            be <code>null</code>
+     */
+    public void setUncertainty(PoseUncertainty uncertainty) {
+        this.uncertainty = uncertainty;
+    }
+
+    /**
+     * @return true if the corrector is correcting the odometer
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return how many times the odometer has been corrected
+     */
+    public int getCorrections() {
+        return corrections;
+    }
+
+    /**
+     * @return the corrected pose {x, y, theta} of the last correction, or null if
+     *         there hasn't been one
+     */
+    public double[] getLastCorrection() {
+        return lastCorrection;
+    }
+
+    @Override
+    public void run() {
+        double[] leftPose = null;
+        double[] rightPose = null;
+        double leftAt = 0;
+        double rightAt = 0;
+        long leftTime = 0;
+        long rightTime = 0;
+        // distance driven forward while enabled
+        double travelled = 0;
+        double[] previous = odo.getXYT();
+        boolean wasEnabled = false;
+
+        while (true) {
+            if (!enabled) {
+                // Localization polls the same sensors while this is disabled
+                leftPose = null;
+                rightPose = null;
+                wasEnabled = false;
+                try {
+                    Thread.sleep(POLL_PERIOD);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                previous = odo.getXYT();
+                continue;
+            }
+            double[] pose = odo.getXYT();
+            float deltaL = dLTleft.getDeltaL();
+            float deltaR = dLTright.getDeltaL();
+
+            double h = Math.toRadians(previous[2]);
+            double moved = (pose[0] - previous[0]) * Math.sin(h) + (pose[1] - previous[1]) * Math.cos(h);
+            // the wheels turn opposite ways when turning in place, however slowly the
+            // heading changes between two odometer updates, and at different speeds on
+            // arcs and heading corrections
+            int leftSpeed = movCon.getRotationSpeed(false);
+            int rightSpeed = movCon.getRotationSpeed(true);
+            boolean drivingStraight = leftSpeed > MIN_WHEEL_SPEED && rightSpeed > MIN_WHEEL_SPEED
+                    && Math.abs(leftSpeed - rightSpeed) < MAX_SPEED_DIFFERENCE * (leftSpeed + rightSpeed) / 2;
+            long now = System.currentTimeMillis();
+
+            if (!wasEnabled || !drivingStraight) {
+                // crossings are only measured while driving forward in a straight line
+                leftPose = null;
+                rightPose = null;
+            } else {
+                travelled += Math.max(moved, 0);
+                if (leftPose == null && travelled > leftAt + LINE_CLEARANCE
+                        && Math.abs(deltaL) > LINE_THRESHOLD) {
+                    leftPose = GridLineGeometry.midpoint(previous, pose);
+                    leftAt = travelled;
+                    leftTime = now;
+                }
+                if (rightPose == null && travelled > rightAt + LINE_CLEARANCE
+                        && Math.abs(deltaR) > LINE_THRESHOLD) {
+                    rightPose = GridLineGeometry.midpoint(previous, pose);
+                    rightAt = travelled;
+                    rightTime = now;
+                }
+
+                if (leftPose != null && rightPose != null) {
+                    boolean leftIsLater = leftAt > rightAt;
+                    double[] later = leftIsLater ? leftPose : rightPose;
+                    double[] fix = gridGeometry.correct(leftPose, rightPose);
+                    if (fix != null) {
+                        double dTheta = ((fix[2] - later[2]) % 360 + 540) % 360 - 180;
+                        odo.update(fix[0] - later[0], fix[1] - later[1], dTheta);
+                        lastCorrection = fix;
+                        corrections++;
+                        if (uncertainty != null) {
+                            // only the position across the line was corrected
+                            if (fix[0] != later[0]) {
+                                uncertainty.localizedX(POSITION_SIGMA);
+                            } else {
+                                uncertainty.localizedY(POSITION_SIGMA);
+                            }
+                            uncertainty.localizedTheta(THETA_SIGMA);
+                        }
+                        leftPose = null;
+                        rightPose = null;
+                    } else if (leftIsLater) {
+                        // the sensors may have crossed different lines, keep the latest crossing
+                        rightPose = null;
+                    } else {
+                        leftPose = null;
+                    }
+                } else if (leftPose != null
+                        && (travelled - leftAt > MAX_CROSSING_GAP || now - leftTime > MAX_CROSSING_TIME)) {
+                    leftPose = null;
+                } else if (rightPose != null
+                        && (travelled - rightAt > MAX_CROSSING_GAP || now - rightTime > MAX_CROSSING_TIME)) {
+                    rightPose = null;
+                }
+            }
+
+            wasEnabled = enabled;
+            // read the pose again in case it was just corrected
+            previous = odo.getXYT();
+            try {
+                Thread.sleep(POLL_PERIOD);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package ca.mcgill.ecse211.localizers;
+
+import ca.mcgill.ecse211.odometer.Odometer;
+import ca.mcgill.ecse211.odometer.OdometerListener;
+
+/**
+ * Estimates how far off the odometer could be, as the covariance of its x, y
+ * and heading. The covariance grows with the distance driven and the angle
+ * turned, and with slip events like bumping into something. It shrinks when
+ * the robot localizes.
+ * <p>
+ * The covariance is propagated at every step of the {@link Odometer} with the
+ * heading of that step. The correlation between the heading and the position
+ * is kept, so the error across a straight leg grows with the square of its
+ * length no matter how the leg is split into steps.
+ * 
+ * @author Julian Armour
+ * @since April 12, 2019
+ * @version 2
+ */
+public class PoseUncertainty implements OdometerListener {
+    // variance growth along the direction driven (cm^2 per cm)
+    private static final double DISTANCE_VARIANCE = 0.02;
+    // heading variance growth (deg^2) per degree turned and per cm driven
+    private static final double ROTATION_VARIANCE = 0.02;
+    private static final double DRIFT_VARIANCE    = 0.005;
+
+    // variances (cm^2, deg^2) and covariances (cm^2, cm deg)
+    private double              varX;
+    private double              varY;
+    private double              varTheta;
+    private double              covXY;
+    private double              covXTheta;
+    private double              covYTheta;
+
+    /**
+     * @param odometer
+     *            the {@link Odometer}, which will report its steps to this
+     */
+    public PoseUncertainty(Odometer odometer) {
+        odometer.setListener(this);
+    }
+
+    @Override
+    public synchronized void odometerStepped(double distance, double angle, double heading) {
+        double h = Math.toRadians(heading);
+        double sin = Math.sin(h);
+        double cos = Math.cos(h);
+        // how the position moves with a heading error of one degree
+        double dx = Math.toRadians(distance) * cos;
+        double dy = -Math.toRadians(distance) * sin;
+        varX += 2 * dx * covXTheta + dx * dx * varTheta;
+        varY += 2 * dy * covYTheta + dy * dy * varTheta;
+        covXY += dx * covYTheta + dy * covXTheta + dx * dy * varTheta;
+        covXTheta += dx * varTheta;
+        covYTheta += dy * varTheta;
+
+        // errors of the wheels along the direction driven, and of the heading
+        double along = DISTANCE_VARIANCE * Math.abs(distance);
+        varX += along * sin * sin;
+        varY += along * cos * cos;
+        covXY += along * sin * cos;
+        varTheta += ROTATION_VARIANCE * Math.abs(angle) + DRIFT_VARIANCE * Math.abs(distance);
+    }
+
+    /**
+     * Predicts whether the robot would still be within a tolerance after
+     * driving a straight leg.
+     * 
+     * @param heading
+     *            the heading of the leg in degrees
+     * @param distance
+     *            the length of the leg in cm
+     * @param tolerance
+     *            the largest error in cm allowed at the end of the leg, taken as
+     *            three standard deviations
+     * @return true if the position along and across the leg would be within the
+     *         tolerance
+     */
+    public synchronized boolean withinTolerance(double heading, double distance, double tolerance) {
+        double h = Math.toRadians(heading);
+        double sin = Math.sin(h);
+        double cos = Math.cos(h);
+        double along = varX * sin * sin + varY * cos * cos + 2 * covXY * sin * cos
+                + DISTANCE_VARIANCE * distance;
+        // the heading drifts during the leg, so the drift only moves the end of the
+        // leg a third as much as an error at its start would
+        double thetaVariance = varTheta + DRIFT_VARIANCE * distance / 3;
+        double d = Math.toRadians(distance);
+        double across = varX * cos * cos + varY * sin * sin - 2 * covXY * sin * cos
+                + 2 * d * (covXTheta * cos - covYTheta * sin) + d * d * thetaVariance;
+        return 3 * Math.sqrt(along) <= tolerance && 3 * Math.sqrt(across) <= tolerance;
+    }
+
+    /**
+     * Records a localization of the x position.
+     * 
+     * @param sigma
+     *            the standard deviation in cm of the x position after it
+     */
+    public synchronized void localizedX(double sigma) {
+        varX = sigma * sigma;
+        covXY = 0;
+        covXTheta = 0;
+    }
+
+    /**
+     * Records a localization of the y position.
+     * 
+     * @param sigma
+     *            the standard deviation in cm of the y position after it
+     */
+    public synchronized void localizedY(double sigma) {
+        varY = sigma * sigma;
+        covXY = 0;
+        covYTheta = 0;
+    }
+
+    /**
+     * Records a localization of the heading.
+     * 
+     * @param sigma
+     *            the standard deviation in degrees of the heading after it
+     */
+    public synchronized void localizedTheta(double sigma) {
+        varTheta = sigma * sigma;
+        covXTheta = 0;
+        covYTheta = 0;
+    }
+
+    /**
+     * Records a slip event, like a collision or the wheels slipping, that throws
+     * the odometer off.
+     * 
+     * @param positionSigma
+     *            the standard deviation in cm of the position error it causes
+     * @param thetaSigma
+     *            the standard deviation in degrees of the heading error it causes
+     */
+    public synchronized void slipped(double positionSigma, double thetaSigma) {
+        varX += positionSigma * positionSigma;
+        varY += positionSigma * positionSigma;
+        varTheta += thetaSigma * thetaSigma;
+    }
+
+    /**
+     * @return the standard deviations {x, y, theta} in cm and degrees
+     */
+    public synchronized double[] getSigmas() {
+        return new double[] { Math.sqrt(varX), Math.sqrt(varY), Math.sqrt(varTheta) };
+    }
+}
@@ -0,0 +1,183 @@
+package ca.mcgill.ecse211.localizers;
+
+/**
+ * A record of the distances measured by the ultrasonic sensor during a rotation
+ * in place, with the time and the odometer's heading of every sample. Once the
+ * rotation is over, the record is searched for the "valley" where the sensor
+ * faced the walls of the starting corner.
+ * <p>
+ * The headings are kept unwrapped, so a full turn goes from h to h + 360
+ * instead of wrapping around at 360.
+ * 
+ * @author Julian Armour
+ * @since April 12, 2019
+ * @version 1
+ */
+public class RangeProfile {
+    private long[]   times;
+    private double[] headings;
+    private float[]  distances;
+    private int      size;
+
+    /**
+     * @param capacity
+     *            the most samples the profile can hold, later samples are
+     *            ignored
+     */
+    public RangeProfile(int capacity) {
+        this.times = new long[capacity];
+        this.headings = new double[capacity];
+        this.distances = new float[capacity];
+        this.size = 0;
+    }
+
+    /**
+     * Forgets all the samples.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return the number of samples
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds a sample.
+     * 
+     * @param time
+     *            when the sample was taken, in ms
+     * @param heading
+     *            the odometer's heading in degrees when the sample was taken
+     * @param distance
+     *            the distance measured in cm
+     */
+    public void add(long time, double heading, float distance) {
+        if (size == times.length) {
+            return;
+        }
+        if (size > 0) {
+            // unwrap the heading around the previous one
+            double previous = headings[size - 1];
+            double d = ((heading - previous) % 360 + 540) % 360 - 180;
+            heading = previous + d;
+        }
+        times[size] = time;
+        headings[size] = heading;
+        distances[size] = distance;
+        size++;
+    }
+
+    /**
+     * @return the unwrapped heading in degrees at a time, interpolated between the
+     *         samples
+     */
+    public double headingAt(long time) {
+        if (time <= times[0]) {
+            return headings[0];
+        }
+        for (int i = 1; i < size; i++) {
+            if (time <= times[i]) {
+                double f = (double) (time - times[i - 1]) / Math.max(times[i] - times[i - 1], 1);
+                return headings[i - 1] + f * (headings[i] - headings[i - 1]);
+            }
+        }
+        return headings[size - 1];
+    }
+
+    /**
+     * Finds the widest range of headings where the distance stays under a
+     * threshold, over the first full turn of the profile. The turn is treated as
+     * a circle, so a valley that was entered before the rotation started is
+     * joined with its end. The edges are interpolated between the samples on
+     * each side of the threshold.
+     * 
+     * @param threshold
+     *            the distance in cm under which the sensor sees a wall
+     * @param lag
+     *            how late, in ms, the distances are compared to the headings, like
+     *            the delay of a median filter. The distance of a sample is matched
+     *            to the heading the robot had this long before it.
+     * @return the headings {falling edge, rising edge} in [0, 360) where the
+     *         distance went under and then back over the threshold, or null if
+     *         the profile doesn't cover a full turn or has no valley
+     */
+    public double[] findValley(double threshold, long lag) {
+        if (size < 3) {
+            return null;
+        }
+        // headings matched to the distances, over one turn. The first samples
+        // have no heading recorded early enough to be matched with.
+        int first = 0;
+        while (first < size && times[first] - lag < times[0]) {
+            first++;
+        }
+        if (first == size || Math.abs(headingAt(times[size - 1] - lag) - headingAt(times[first] - lag)) < 360) {
+            return null;
+        }
+        double start = headingAt(times[first] - lag);
+        double[] h = new double[size];
+        float[] d = new float[size];
+        int n = 0;
+        for (int i = first; i < size; i++) {
+            double heading = headingAt(times[i] - lag);
+            if (Math.abs(heading - start) >= 360) {
+                break;
+            }
+            h[n] = heading;
+            d[n] = distances[i];
+            n++;
+        }
+        if (n < 3) {
+            return null;
+        }
+        double direction = Math.signum(h[n - 1] - h[0]);
+
+        // the edges in the order they were crossed, the last sample wraps to the first
+        double[] edgeHeadings = new double[n];
+        boolean[] falling = new boolean[n];
+        int edges = 0;
+        for (int i = 0; i < n; i++) {
+            int j = (i + 1) % n;
+            boolean below = d[i] < threshold;
+            boolean nextBelow = d[j] < threshold;
+            if (below == nextBelow) {
+                continue;
+            }
+            double hj = j == 0 ? h[0] + 360 * direction : h[j];
+            double f = (threshold - d[i]) / (d[j] - d[i]);
+            edgeHeadings[edges] = h[i] + f * (hj - h[i]);
+            falling[edges] = nextBelow;
+            edges++;
+        }
+
+        // pair every falling edge with the rising edge that follows it
+        double[] best = null;
+        double bestWidth = -1;
+        for (int e = 0; e < edges; e++) {
+            int r = (e + 1) % edges;
+            if (!falling[e] || falling[r]) {
+                continue;
+            }
+            double width = (edgeHeadings[r] - edgeHeadings[e]) * direction;
+            if (width < 0) {
+                width += 360;
+            }
+            if (width > bestWidth) {
+                bestWidth = width;
+                best = new double[] { wrap(edgeHeadings[e]), wrap(edgeHeadings[r]) };
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return an angle in degrees in [0, 360)
+     */
+    private static double wrap(double angle) {
+        return (angle % 360 + 360) % 360;
+    }
+}
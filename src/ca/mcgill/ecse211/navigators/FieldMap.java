@@ -0,0 +1,198 @@
+package ca.mcgill.ecse211.navigators;
+
+/**
+ * Tile map of the playing field built from the parameters received over WiFi.
+ * Every tile is either water, part of the starting zone, the island, the search
+ * zone or the tunnel. Tile (x, y) is the tile whose lower left corner is the
+ * grid intersection (x, y).
+ * <p>
+ * Headings are multiples of 90 degrees, 0 being +y and 90 being +x.
+ * 
+ * @author Julian Armour
+ * @since April 8, 2019
+ * @version 1
+ */
+public class FieldMap {
+    public static final int    FIELD_WIDTH  = 15;
+    public static final int    FIELD_HEIGHT = 9;
+    // tile types
+    public static final int    WATER        = 0;
+    public static final int    START_ZONE   = 1;
+    public static final int    ISLAND       = 2;
+    public static final int    SEARCH_ZONE  = 3;
+    public static final int    TUNNEL       = 4;
+    // tile offset of one step in the direction of heading 0, 90, 180 and 270
+    static final int[]         DX           = { 0, 1, 0, -1 };
+    static final int[]         DY           = { 1, 0, -1, 0 };
+
+    private int[][]            tiles;
+    private int[]              tunnelLL;
+    private int[]              tunnelUR;
+    // heading of the tunnel when going from the starting zone to the island
+    private int                tunnelHeading;
+
+    /**
+     * @param startZoneLL
+     *            lower left corner of the starting zone
+     * @param startZoneUR
+     *            upper right corner of the starting zone
+     * @param islandLL
+     *            lower left corner of the island
+     * @param islandUR
+     *            upper right corner of the island
+     * @param tunnelLL
+     *            lower left corner of the tunnel
+     * @param tunnelUR
+     *            upper right corner of the tunnel
+     * @param searchZoneLL
+     *            lower left corner of the search zone
+     * @param searchZoneUR
+     *            upper right corner of the search zone
+     */
+    public FieldMap(
+            int[] startZoneLL, int[] startZoneUR, int[] islandLL, int[] islandUR, int[] tunnelLL, int[] tunnelUR,
+            int[] searchZoneLL, int[] searchZoneUR
+    ) {
+        this.tiles = new int[FIELD_WIDTH][FIELD_HEIGHT];
+        this.tunnelLL = tunnelLL;
+        this.tunnelUR = tunnelUR;
+        fill(startZoneLL, startZoneUR, START_ZONE);
+        fill(islandLL, islandUR, ISLAND);
+        fill(searchZoneLL, searchZoneUR, SEARCH_ZONE);
+        fill(tunnelLL, tunnelUR, TUNNEL);
+        this.tunnelHeading = findTunnelHeading();
+    }
+
+    /**
+     * Sets the type of all the tiles in a rectangle.
+     */
+    private void fill(int[] LL, int[] UR, int type) {
+        for (int x = Math.max(0, LL[0]); x < Math.min(FIELD_WIDTH, UR[0]); x++) {
+            for (int y = Math.max(0, LL[1]); y < Math.min(FIELD_HEIGHT, UR[1]); y++) {
+                tiles[x][y] = type;
+            }
+        }
+    }
+
+    /**
+     * Finds which way the tunnel goes from the starting zone to the island, by
+     * checking which of its ends opens on the starting zone.
+     */
+    private int findTunnelHeading() {
+        for (int heading = 0; heading < 360; heading += 90) {
+            int[] before = tileBeforeTunnel(heading);
+            int[] after = tileBeforeTunnel((heading + 180) % 360);
+            if (getTile(before[0], before[1]) == START_ZONE && isDrivable(after[0], after[1])
+                    && getTile(after[0], after[1]) != START_ZONE) {
+                return heading;
+            }
+        }
+        // the parameters don't make sense, go along the longest side of the tunnel
+        if (tunnelUR[0] - tunnelLL[0] > tunnelUR[1] - tunnelLL[1]) {
+            return getTile(tunnelLL[0] - 1, tunnelLL[1]) == START_ZONE ? 90 : 270;
+        } else {
+            return getTile(tunnelLL[0], tunnelLL[1] - 1) == START_ZONE ? 0 : 180;
+        }
+    }
+
+    /**
+     * @return the tile in front of the tunnel entrance when driving through it at
+     *         the given heading
+     */
+    private int[] tileBeforeTunnel(int heading) {
+        switch (heading) {
+        case 0:
+            return new int[] { tunnelLL[0], tunnelLL[1] - 1 };
+        case 90:
+            return new int[] { tunnelLL[0] - 1, tunnelLL[1] };
+        case 180:
+            return new int[] { tunnelLL[0], tunnelUR[1] };
+        default:
+            return new int[] { tunnelUR[0], tunnelLL[1] };
+        }
+    }
+
+    /**
+     * @return the type of tile (x, y). Tiles outside the field are water.
+     */
+    public int getTile(int x, int y) {
+        if (x < 0 || x >= FIELD_WIDTH || y < 0 || y >= FIELD_HEIGHT) {
+            return WATER;
+        }
+        return tiles[x][y];
+    }
+
+    /**
+     * @return true if the robot can drive on tile (x, y) without going through
+     *         the tunnel
+     */
+    public boolean isDrivable(int x, int y) {
+        int type = getTile(x, y);
+        return type == START_ZONE || type == ISLAND || type == SEARCH_ZONE;
+    }
+
+    /**
+     * @param towardsIsland
+     *            true when going from the starting zone to the island
+     * @return the heading in degrees of the robot when driving through the tunnel
+     */
+    public int getTunnelHeading(boolean towardsIsland) {
+        return towardsIsland ? tunnelHeading : (tunnelHeading + 180) % 360;
+    }
+
+    /**
+     * @return the length of the tunnel in tiles
+     */
+    public int getTunnelLength() {
+        if (tunnelHeading == 90 || tunnelHeading == 270) {
+            return tunnelUR[0] - tunnelLL[0];
+        }
+        return tunnelUR[1] - tunnelLL[1];
+    }
+
+    /**
+     * @param towardsIsland
+     *            true when going from the starting zone to the island
+     * @return the tile {x, y} right in front of the tunnel entrance
+     */
+    public int[] getTunnelApproachTile(boolean towardsIsland) {
+        return tileBeforeTunnel(getTunnelHeading(towardsIsland));
+    }
+
+    /**
+     * Finds where the robot localizes after going through the tunnel: the grid
+     * intersection one tile past the exit, on the side of the tunnel where there
+     * is ground on both sides of that grid line.
+     * 
+     * @param towardsIsland
+     *            true when going from the starting zone to the island
+     * @return {x, y, heading}, the grid intersection and the heading the robot
+     *         turns to in order to reach it from the middle of the tunnel
+     */
+    public int[] getTunnelLanding(boolean towardsIsland) {
+        int heading = getTunnelHeading(towardsIsland);
+        int d = heading / 90;
+        // the tile right after the exit
+        int[] exit = tileBeforeTunnel((heading + 180) % 360);
+        // the grid line one tile past the exit, the robot straddles it
+        int lineX = exit[0] + (DX[d] > 0 ? 1 : 0);
+        int lineY = exit[1] + (DY[d] > 0 ? 1 : 0);
+        // the two tiles on each side of that line, along the tunnel
+        int beyondX = exit[0] + DX[d];
+        int beyondY = exit[1] + DY[d];
+
+        int left = (d + 3) % 4;
+        int right = (d + 1) % 4;
+        int sideHeading = right * 90;
+        if (!isDrivable(exit[0] + DX[right], exit[1] + DY[right])
+                || !isDrivable(beyondX + DX[right], beyondY + DY[right])) {
+            sideHeading = left * 90;
+        }
+        int side = sideHeading / 90;
+        if (DX[d] != 0) {
+            return new int[] { lineX, exit[1] + (DY[side] > 0 ? 1 : 0), sideHeading };
+        } else {
+            return new int[] { exit[0] + (DX[side] > 0 ? 1 : 0), lineY, sideHeading };
+        }
+    }
+}
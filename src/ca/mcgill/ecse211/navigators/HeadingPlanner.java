@@ -0,0 +1,115 @@
+package ca.mcgill.ecse211.navigators;
+
+import java.util.List;
+
+/**
+ * Chooses whether to drive each leg of a waypoint list forward or in reverse so
+ * the total rotation, which is the slowest part of moving around, is as small
+ * as possible. Every leg has two choices and the best sequence is found with
+ * dynamic programming, keeping the cheapest way to end each leg in either
+ * direction.
+ * <p>
+ * Legs that start with a localization have to be driven forward, since the
+ * line sensors are at the back of the robot.
+ * 
+ * @author Julian Armour
+ * @since April 10, 2019
+ * @version 1
+ */
+public class HeadingPlanner {
+    // extra cost, in degrees of rotation, of driving a leg in reverse
+    private static final double REVERSE_PENALTY = 10;
+    // legs shorter than this (cm) don't need the robot to face them
+    private static final double MIN_LEG_LENGTH  = 1;
+
+    /**
+     * Plans the driving direction of every leg.
+     * 
+     * @param start
+     *            the robot's pose {x, y, theta}
+     * @param waypoints
+     *            the positions {x, y} to go through in order
+     * @param mustDriveForward
+     *            for every leg, true if it has to be driven forward, can be
+     *            <code>null</code> if every leg can be reversed
+     * @param finalHeading
+     *            the heading in degrees to face at the end, or a negative value if
+     *            any heading is fine
+     * @return for every leg, true if it should be driven in reverse
+     */
+    public static boolean[] plan(double[] start, List<float[]> waypoints, boolean[] mustDriveForward,
+            double finalHeading) {
+        int n = waypoints.size();
+        double[] bearing = new double[n];
+        boolean[] skip = new boolean[n];
+        double x = start[0];
+        double y = start[1];
+        for (int i = 0; i < n; i++) {
+            float[] wp = waypoints.get(i);
+            skip[i] = Math.hypot(wp[0] - x, wp[1] - y) < MIN_LEG_LENGTH;
+            bearing[i] = (Math.toDegrees(Math.atan2(wp[0] - x, wp[1] - y)) + 360) % 360;
+            x = wp[0];
+            y = wp[1];
+        }
+
+        // cost[i][r]: least rotation to finish leg i driving forward (r = 0) or in
+        // reverse (r = 1), and the heading the robot has then
+        double[][] cost = new double[n + 1][2];
+        double[][] heading = new double[n + 1][2];
+        int[][] from = new int[n + 1][2];
+        cost[0][0] = 0;
+        cost[0][1] = Double.MAX_VALUE;
+        heading[0][0] = start[2];
+        for (int i = 0; i < n; i++) {
+            for (int r = 0; r < 2; r++) {
+                cost[i + 1][r] = Double.MAX_VALUE;
+                if (skip[i]) {
+                    // the robot doesn't turn for this leg
+                    cost[i + 1][r] = cost[i][r];
+                    heading[i + 1][r] = heading[i][r];
+                    from[i + 1][r] = r;
+                    continue;
+                }
+                if (r == 1 && mustDriveForward != null && mustDriveForward[i]) {
+                    continue;
+                }
+                double h = r == 0 ? bearing[i] : (bearing[i] + 180) % 360;
+                for (int p = 0; p < 2; p++) {
+                    if (cost[i][p] == Double.MAX_VALUE) {
+                        continue;
+                    }
+                    double c = cost[i][p] + Math.abs(TrajectoryPlanner.angleDifference(heading[i][p], h))
+                            + (r == 1 ? REVERSE_PENALTY : 0);
+                    if (c < cost[i + 1][r]) {
+                        cost[i + 1][r] = c;
+                        heading[i + 1][r] = h;
+                        from[i + 1][r] = p;
+                    }
+                }
+            }
+        }
+
+        // account for the final rotation, then walk back through the choices
+        int best = 0;
+        double bestCost = Double.MAX_VALUE;
+        for (int r = 0; r < 2; r++) {
+            if (cost[n][r] == Double.MAX_VALUE) {
+                continue;
+            }
+            double c = cost[n][r];
+            if (finalHeading >= 0) {
+                c += Math.abs(TrajectoryPlanner.angleDifference(heading[n][r], finalHeading));
+            }
+            if (c < bestCost) {
+                bestCost = c;
+                best = r;
+            }
+        }
+        boolean[] reverse = new boolean[n];
+        for (int i = n; i > 0; i--) {
+            reverse[i - 1] = best == 1;
+            best = from[i][best];
+        }
+        return reverse;
+    }
+}
@@ -0,0 +1,161 @@
+package ca.mcgill.ecse211.navigators;
+
+import lejos.utility.Delay;
+
+/**
+ * A motion primitive of the {@link MovementController} that can be queued in
+ * the {@link MotionExecutor}.
+ * 
+ * @author Julian Armour
+ * @since April 4, 2019
+ * @version 2
+ */
+public class MotionCommand {
+
+    /**
+     * The different types of motion commands.
+     */
+    public enum Type {
+    TRAVEL_TO, TURN_TO, TURN_CLOCKWISE_TO, DRIVE_DISTANCE, ROTATE_ANGLE;
+    }
+
+    // time given to the robot to stop between the turn and drive of a TRAVEL_TO
+    private static final int SETTLE_TIME = 250;
+
+    private final Type       type;
+    private final double[]   args;
+
+    private MotionCommand(Type type, double... args) {
+        this.type = type;
+        this.args = args;
+    }
+
+    /**
+     * @param x
+     *            the physical x position
+     * @param y
+     *            the physical y position
+     * @return a command for traveling to (x,y)
+     * @see MovementController#travelTo(double, double, boolean)
+     */
+    public static MotionCommand travelTo(double x, double y) {
+        return new MotionCommand(Type.TRAVEL_TO, x, y);
+    }
+
+    /**
+     * @param theta
+     *            the absolute angle in degrees to turn to
+     * @return a command for turning to theta by the smallest angle
+     * @see MovementController#turnTo(double)
+     */
+    public static MotionCommand turnTo(double theta) {
+        return new MotionCommand(Type.TURN_TO, theta);
+    }
+
+    /**
+     * @param theta
+     *            the absolute angle in degrees to turn to
+     * @return a command for turning clockwise to theta
+     * @see MovementController#turnClockwiseTo(double, boolean)
+     */
+    public static MotionCommand turnClockwiseTo(double theta) {
+        return new MotionCommand(Type.TURN_CLOCKWISE_TO, theta);
+    }
+
+    /**
+     * @param distance
+     *            the distance in cm to drive, negative to drive backwards
+     * @return a command for driving in a straight line
+     * @see MovementController#driveDistance(double)
+     */
+    public static MotionCommand driveDistance(double distance) {
+        return new MotionCommand(Type.DRIVE_DISTANCE, distance);
+    }
+
+    /**
+     * @param theta
+     *            the number of degrees to turn
+     * @param turnClockwise
+     *            if false, the robot turns counter-clockwise
+     * @return a command for rotating in place
+     * @see MovementController#rotateAngle(double, boolean)
+     */
+    public static MotionCommand rotateAngle(double theta, boolean turnClockwise) {
+        return new MotionCommand(Type.ROTATE_ANGLE, theta, turnClockwise ? 1 : 0);
+    }
+
+    /**
+     * @param theta
+     *            the number of degrees to turn
+     * @param turnClockwise
+     *            if false, the robot turns counter-clockwise
+     * @param speed
+     *            the speed of the wheels in deg/s
+     * @return a command for rotating in place at a given speed
+     * @see MovementController#rotateAngle(double, boolean, int, boolean)
+     */
+    public static MotionCommand rotateAngle(double theta, boolean turnClockwise, int speed) {
+        return new MotionCommand(Type.ROTATE_ANGLE, theta, turnClockwise ? 1 : 0, speed);
+    }
+
+    /**
+     * @return the type of this command
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Performs the motion. The calling thread waits until the motion is complete
+     * or the future is cancelled.
+     * 
+     * @param movCon
+     *            the {@link MovementController} that moves the robot
+     * @param future
+     *            the future of this command, checked between the stages of a
+     *            motion
+     */
+    void execute(MovementController movCon, MotionFuture future) {
+        switch (type) {
+        case TRAVEL_TO:
+            double[] curPos = movCon.getOdometer().getXYT();
+            movCon.turnTo(movCon.calculateAngle(curPos[0], curPos[1], args[0], args[1]));
+            if (future.isCancelRequested()) {
+                return;
+            }
+            // give the robot some time to stop
+            Delay.msDelay(SETTLE_TIME);
+            if (future.isCancelRequested()) {
+                return;
+            }
+            curPos = movCon.getOdometer().getXYT();
+            movCon.driveDistance(movCon.calculateDistance(curPos[0], curPos[1], args[0], args[1]), false);
+            break;
+        case TURN_TO:
+            movCon.turnTo(args[0]);
+            break;
+        case TURN_CLOCKWISE_TO:
+            movCon.turnClockwiseTo(args[0], false);
+            break;
+        case DRIVE_DISTANCE:
+            movCon.driveDistance(args[0], false);
+            break;
+        case ROTATE_ANGLE:
+            if (args.length > 2) {
+                movCon.rotateAngle(args[0], args[1] != 0, (int) args[2], false);
+            } else {
+                movCon.rotateAngle(args[0], args[1] != 0, false);
+            }
+            break;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(type.toString());
+        for (double arg : args) {
+            sb.append(' ').append((int) arg);
+        }
+        return sb.toString();
+    }
+}
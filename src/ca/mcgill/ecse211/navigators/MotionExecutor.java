@@ -0,0 +1,147 @@
+package ca.mcgill.ecse211.navigators;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Runs {@link MotionCommand}s one after the other on its own thread, so the
+ * caller can keep sensing or planning while the robot moves. Each submitted
+ * command returns a {@link MotionFuture} that can be waited on or cancelled.
+ * 
+ * @author Julian Armour
+ * @since April 4, 2019
+ * @version 2
+ */
+public class MotionExecutor implements Runnable {
+    private MovementController       movCon;
+    // guards the queue and current, a command taken from the queue is current at once
+    private final Object             lock = new Object();
+    private LinkedList<MotionFuture> queue;
+    private MotionFuture             current;
+
+    /**
+     * @param movementController
+     *            the {@link MovementController} that performs the motions
+     */
+    public MotionExecutor(MovementController movementController) {
+        this.movCon = movementController;
+        this.queue = new LinkedList<MotionFuture>();
+    }
+
+    /**
+     * Starts the executor's thread.
+     */
+    public void start() {
+        Thread executorThread = new Thread(this);
+        executorThread.setDaemon(true);
+        executorThread.start();
+    }
+
+    /**
+     * Adds a command at the end of the queue.
+     * 
+     * @param command
+     *            the motion to perform
+     * @param listener
+     *            notified when the motion is finished, can be <code>null</code>
+     * @return the future of the command
+     */
+    public MotionFuture submit(MotionCommand command, MotionListener listener) {
+        MotionFuture future = new MotionFuture(command, listener, this);
+        synchronized (lock) {
+            queue.add(future);
+            lock.notifyAll();
+        }
+        return future;
+    }
+
+    /**
+     * Cancels the running and queued commands, then submits a command.
+     * 
+     * @param command
+     *            the motion to perform right away
+     * @param listener
+     *            notified when the motion is finished, can be <code>null</code>
+     * @return the future of the command
+     */
+    public MotionFuture preempt(MotionCommand command, MotionListener listener) {
+        cancelAll();
+        return submit(command, listener);
+    }
+
+    /**
+     * Cancels the running command and all the queued ones. The robot is stopped
+     * if it was moving.
+     */
+    public void cancelAll() {
+        List<MotionFuture> cancelled;
+        synchronized (lock) {
+            cancelled = new LinkedList<MotionFuture>(queue);
+            queue.clear();
+            if (current != null) {
+                cancelled.add(current);
+            }
+        }
+        // cancelling notifies the listeners and stops the motors, not under the lock
+        for (MotionFuture future : cancelled) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * @return true if no command is running or queued
+     */
+    public boolean isIdle() {
+        synchronized (lock) {
+            return current == null && queue.isEmpty();
+        }
+    }
+
+    /**
+     * Stops the motors, which makes the running command return. If the command
+     * hasn't started them yet, it won't, see
+     * {@link MovementController#guardMotion(MotionFuture)}.
+     */
+    void stopMotion() {
+        movCon.stopGuardedMotion();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            MotionFuture future;
+            synchronized (lock) {
+                while (queue.isEmpty()) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                future = queue.poll();
+                current = future;
+            }
+            if (!future.start()) {
+                // cancelled while in the queue
+                synchronized (lock) {
+                    current = null;
+                }
+                continue;
+            }
+            try {
+                movCon.guardMotion(future);
+                future.getCommand().execute(movCon, future);
+            } catch (RuntimeException e) {
+                // stop the robot and report the motion as cancelled, the next ones still run
+                e.printStackTrace();
+                future.cancel(true);
+            } finally {
+                movCon.guardMotion(null);
+                synchronized (lock) {
+                    current = null;
+                }
+                future.finish();
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package ca.mcgill.ecse211.navigators;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The completion handle of a {@link MotionCommand} submitted to the
+ * {@link MotionExecutor}. Cancelling the future removes the command from the
+ * queue, or stops the robot if the command is already running.
+ * <p>
+ * A running command is only cancelled once the executor's thread has returned
+ * from it, so {@link #isDone()} and {@link #await()} never return while the
+ * command could still start the motors.
+ * 
+ * @author Julian Armour
+ * @since April 4, 2019
+ * @version 2
+ */
+public class MotionFuture implements Future<Boolean> {
+    private static final int     QUEUED    = 0;
+    private static final int     RUNNING   = 1;
+    private static final int     DONE      = 2;
+    private static final int     CANCELLED = 3;
+
+    private final MotionCommand  command;
+    private final MotionListener listener;
+    private final MotionExecutor executor;
+    private int                  state;
+    private boolean              cancelRequested;
+
+    MotionFuture(MotionCommand command, MotionListener listener, MotionExecutor executor) {
+        this.command = command;
+        this.listener = listener;
+        this.executor = executor;
+        this.state = QUEUED;
+    }
+
+    /**
+     * @return the command of this future
+     */
+    public MotionCommand getCommand() {
+        return command;
+    }
+
+    /**
+     * Marks the command as running.
+     * 
+     * @return false if the command was cancelled before it could start
+     */
+    synchronized boolean start() {
+        if (state != QUEUED) {
+            return false;
+        }
+        state = RUNNING;
+        return true;
+    }
+
+    /**
+     * Marks the command as done, or cancelled if it was cancelled while running,
+     * and notifies the listener.
+     */
+    void finish() {
+        boolean completed;
+        synchronized (this) {
+            if (state == RUNNING) {
+                state = cancelRequested ? CANCELLED : DONE;
+            }
+            completed = state == DONE;
+            notifyAll();
+        }
+        if (listener != null) {
+            listener.motionFinished(command, completed);
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean wasRunning;
+        synchronized (this) {
+            if (state == DONE || state == CANCELLED) {
+                return false;
+            }
+            if (state == RUNNING && (!mayInterruptIfRunning || cancelRequested)) {
+                return false;
+            }
+            wasRunning = state == RUNNING;
+            if (wasRunning) {
+                // the state changes once the executor's thread returns, see finish()
+                cancelRequested = true;
+            } else {
+                state = CANCELLED;
+                notifyAll();
+            }
+        }
+        if (wasRunning) {
+            // the executor's thread returns from the motion once the motors stop
+            executor.stopMotion();
+        } else if (listener != null) {
+            listener.motionFinished(command, false);
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return state == CANCELLED;
+    }
+
+    /**
+     * @return true if the command was cancelled, even if it hasn't returned yet
+     */
+    synchronized boolean isCancelRequested() {
+        return cancelRequested || state == CANCELLED;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return state == DONE || state == CANCELLED;
+    }
+
+    /**
+     * Waits until the motion is finished.
+     * 
+     * @return true once the motion has completed
+     * @throws CancellationException
+     *             if the motion was cancelled
+     */
+    @Override
+    public synchronized Boolean get() throws InterruptedException {
+        while (!isDone()) {
+            wait();
+        }
+        if (state == CANCELLED) {
+            throw new CancellationException(command.toString());
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized Boolean get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+        while (!isDone()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new TimeoutException(command.toString());
+            }
+            wait(remaining);
+        }
+        if (state == CANCELLED) {
+            throw new CancellationException(command.toString());
+        }
+        return true;
+    }
+
+    /**
+     * Waits until the motion is finished, without throwing if it was cancelled.
+     * 
+     * @return true if the motion completed, false if it was cancelled
+     */
+    public synchronized boolean await() {
+        while (!isDone()) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        return state == DONE;
+    }
+}
@@ -0,0 +1,23 @@
+package ca.mcgill.ecse211.navigators;
+
+/**
+ * Receives a callback when a {@link MotionCommand} submitted to the
+ * {@link MotionExecutor} is finished.
+ * 
+ * @author Julian Armour
+ * @since April 4, 2019
+ * @version 1
+ */
+public interface MotionListener {
+
+    /**
+     * Called from the {@link MotionExecutor}'s thread once a command is done.
+     * 
+     * @param command
+     *            the command that finished
+     * @param completed
+     *            true if the motion completed, false if it was cancelled or
+     *            preempted
+     */
+    public void motionFinished(MotionCommand command, boolean completed);
+}
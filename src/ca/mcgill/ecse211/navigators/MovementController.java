@@ -1,26 +1,54 @@
 package ca.mcgill.ecse211.navigators;
 
+import java.util.List;
+
 import lejos.hardware.motor.EV3LargeRegulatedMotor;
+import lejos.robotics.RegulatedMotor;
 import lejos.utility.Delay;
 import ca.mcgill.ecse211.odometer.Odometer;
 
 /**
  * Provides methods for controlling the robot's motions and navigation
  * instructions.
+ * <p>
+ * Both wheel motors are synchronized, so commands given to both wheels start
+ * and stop in the same regulator tick.
  * 
  * @author Julian Armour, Alice Kazarine
  * @since Feb 25, 2019
- * @version 5.1
+ * @version 9
  */
 public class MovementController {
-    private static final int       ROTATE_SPEED  = 120;
-    private static final int       FORWARD_SPEED = 250;
+    private static final int       ROTATE_SPEED                = 120;
+    private static final int       FORWARD_SPEED               = 250;
+    private static final int       ACCELERATION                = 1000;
+    // trajectory following
+    private static final int       TRAJECTORY_MOTOR_ACC        = 6000;
+    private static final int       MIN_TRAJECTORY_SPEED        = 40;
+    private static final double    TRAJECTORY_ACCELERATION     = 40;
+    private static final double    TRAJECTORY_JERK             = 120;
+    private static final double    TRAJECTORY_MAX_BLEND_RADIUS = 15;
+    private static final int       HEADING_HOLD_SPEED          = 350;
+    private static final double    HEADING_HOLD_KP             = 10;
+    private static final double    HEADING_HOLD_KD             = 0.5;
+    private static final int       HEADING_HOLD_MAX_TRIM       = 60;
+    // the robot is stuck if the wheels turn less than this (deg) in that many
+    // odometer periods
+    private static final int       HEADING_HOLD_MIN_PROGRESS   = 20;
+    private static final int       HEADING_HOLD_STALL_PERIODS  = 20;
     private EV3LargeRegulatedMotor leftMotor;
     private EV3LargeRegulatedMotor rightMotor;
     private Odometer               odometer;
     private double                 wheelRadius;
     private double                 track_turnCW;
     private double                 track_turnCCW;
+    private MotionExecutor         executor;
+    // the motors of the executor's running motion don't start once it is cancelled
+    private final Object           motionLock = new Object();
+    private MotionFuture           guardedMotion;
+    private Thread                 guardedThread;
+    private TrajectoryPlanner      trajectoryPlanner;
+    private PathFollower           pathFollower;
 
     /**
      * Creates a MovementController object.
@@ -48,10 +76,80 @@ public class MovementController {
         this.wheelRadius = wheelRadius;
         this.track_turnCW = track_turnCW;
         this.track_turnCCW = track_turnCCW;
-        this.leftMotor.setAcceleration(1000);
-        this.rightMotor.setAcceleration(1000);
+        this.leftMotor.synchronizeWith(new RegulatedMotor[] { rightMotor });
+        this.leftMotor.setAcceleration(ACCELERATION);
+        this.rightMotor.setAcceleration(ACCELERATION);
         this.leftMotor.setSpeed(FORWARD_SPEED);
         this.rightMotor.setSpeed(FORWARD_SPEED);
+        this.executor = new MotionExecutor(this);
+        this.executor.start();
+        this.trajectoryPlanner = new TrajectoryPlanner(
+                toLinearSpeed(FORWARD_SPEED), TRAJECTORY_ACCELERATION, TRAJECTORY_JERK,
+                TRAJECTORY_MAX_BLEND_RADIUS, (track_turnCW + track_turnCCW) / 2
+        );
+        this.pathFollower = new PathFollower(this, odometer, (track_turnCW + track_turnCCW) / 2);
+    }
+
+    /**
+     * Queues a motion to be performed on the {@link MotionExecutor}'s thread. The
+     * method returns immediately.
+     * 
+     * @param command
+     *            the motion to perform after the already queued ones
+     * @param listener
+     *            notified when the motion is finished, can be <code>null</code>
+     * @return the future of the motion
+     * 
+     * @author Julian Armour
+     * @since April 4, 2019
+     */
+    public MotionFuture submit(MotionCommand command, MotionListener listener) {
+        return executor.submit(command, listener);
+    }
+
+    /**
+     * Queues a motion to be performed on the {@link MotionExecutor}'s thread.
+     * 
+     * @param command
+     *            the motion to perform after the already queued ones
+     * @return the future of the motion
+     * 
+     * @author Julian Armour
+     * @since April 4, 2019
+     */
+    public MotionFuture submit(MotionCommand command) {
+        return executor.submit(command, null);
+    }
+
+    /**
+     * Cancels all the queued motions, stops the robot and starts a new motion.
+     * 
+     * @param command
+     *            the motion to perform right away
+     * @return the future of the motion
+     * 
+     * @author Julian Armour
+     * @since April 4, 2019
+     */
+    public MotionFuture preempt(MotionCommand command) {
+        return executor.preempt(command, null);
+    }
+
+    /**
+     * Cancels all the queued motions and stops the robot.
+     * 
+     * @author Julian Armour
+     * @since April 4, 2019
+     */
+    public void cancelMotions() {
+        executor.cancelAll();
+    }
+
+    /**
+     * @return the {@link Odometer} used by this MovementController
+     */
+    public Odometer getOdometer() {
+        return odometer;
     }
 
     /**
@@ -66,9 +164,6 @@ public class MovementController {
         // cyclic angle distance
         double dT = ((theta - heading + 360) % 360);
 
-        leftMotor.setSpeed(ROTATE_SPEED);
-        rightMotor.setSpeed(ROTATE_SPEED);
-
         // Turn the smallest angle
         if (dT < 180) {
             rotateAngle(dT, true);
@@ -118,17 +213,7 @@ public class MovementController {
      *            robot will turn counter-clockwise.
      */
     public void rotateAngle(double theta, boolean turnClockwise) {
-        leftMotor.setSpeed(ROTATE_SPEED);
-        rightMotor.setSpeed(ROTATE_SPEED);
-        if (turnClockwise) {
-            odometer.setTrack(track_turnCW);
-            leftMotor.rotate(convertAngle(wheelRadius, track_turnCW, theta), true);
-            rightMotor.rotate(-convertAngle(wheelRadius, track_turnCW, theta), false);
-        } else {
-            odometer.setTrack(track_turnCCW);
-            leftMotor.rotate(-convertAngle(wheelRadius, track_turnCCW, theta), true);
-            rightMotor.rotate(convertAngle(wheelRadius, track_turnCCW, theta), false);
-        }
+        rotateAngle(theta, turnClockwise, false);
     }
 
     /**
@@ -144,16 +229,34 @@ public class MovementController {
      *            If true, do not wait for the move to complete
      */
     public void rotateAngle(double theta, boolean turnClockwise, boolean immediateReturn) {
-        leftMotor.setSpeed(ROTATE_SPEED);
-        rightMotor.setSpeed(ROTATE_SPEED);
+        rotateAngle(theta, turnClockwise, ROTATE_SPEED, immediateReturn);
+    }
+
+    /**
+     * Rotates the robot by the specified angle at the specified speed. The thread
+     * may or may not wait until the rotation is complete depending on
+     * immediateReturn.
+     * 
+     * @param theta
+     *            The number of degrees to turn
+     * @param turnClockwise
+     *            Specifies if the robot should turn clockwise. If false, then the
+     *            robot will turn counter-clockwise.
+     * @param speed
+     *            The speed of the wheels in deg/s
+     * @param immediateReturn
+     *            If true, do not wait for the move to complete
+     */
+    public void rotateAngle(double theta, boolean turnClockwise, int speed, boolean immediateReturn) {
+        setWheelSpeeds(speed, speed);
         if (turnClockwise) {
             odometer.setTrack(track_turnCW);
-            leftMotor.rotate(convertAngle(wheelRadius, track_turnCW, theta), true);
-            rightMotor.rotate(-convertAngle(wheelRadius, track_turnCW, theta), immediateReturn);
+            int angle = convertAngle(wheelRadius, track_turnCW, theta);
+            rotateWheels(angle, -angle, immediateReturn);
         } else {
             odometer.setTrack(track_turnCCW);
-            leftMotor.rotate(-convertAngle(wheelRadius, track_turnCCW, theta), true);
-            rightMotor.rotate(convertAngle(wheelRadius, track_turnCCW, theta), immediateReturn);
+            int angle = convertAngle(wheelRadius, track_turnCCW, theta);
+            rotateWheels(-angle, angle, immediateReturn);
         }
     }
 
@@ -164,10 +267,7 @@ public class MovementController {
      *            The distance in centimeters the robot should move
      */
     public void driveDistance(double distance) {
-        leftMotor.setSpeed(FORWARD_SPEED);
-        rightMotor.setSpeed(FORWARD_SPEED);
-        leftMotor.rotate(convertDistance(wheelRadius, distance), true);
-        rightMotor.rotate(convertDistance(wheelRadius, distance), false);
+        driveDistance(distance, false);
     }
 
     /**
@@ -183,12 +283,11 @@ public class MovementController {
      *            if true do not wait for the move to complete
      */
     public void driveDistance(double distance, int speed, int acceleration, boolean immediateReturn) {
-        leftMotor.setSpeed(speed);
-        rightMotor.setSpeed(speed);
+        setWheelSpeeds(speed, speed);
         leftMotor.setAcceleration(acceleration);
         rightMotor.setAcceleration(acceleration);
-        leftMotor.rotate(convertDistance(wheelRadius, distance), true);
-        rightMotor.rotate(convertDistance(wheelRadius, distance), false);
+        int angle = convertDistance(wheelRadius, distance);
+        rotateWheels(angle, angle, immediateReturn);
     }
 
     /**
@@ -201,21 +300,92 @@ public class MovementController {
      *            If true, do not wait for the move to complete
      */
     public void driveDistance(double distance, boolean immediateReturn) {
-        leftMotor.setSpeed(FORWARD_SPEED);
-        rightMotor.setSpeed(FORWARD_SPEED);
-        leftMotor.rotate(convertDistance(wheelRadius, distance), true);
-        rightMotor.rotate(convertDistance(wheelRadius, distance), immediateReturn);
+        setWheelSpeeds(FORWARD_SPEED, FORWARD_SPEED);
+        int angle = convertDistance(wheelRadius, distance);
+        rotateWheels(angle, angle, immediateReturn);
+    }
+
+    /**
+     * Drives forward in a straight line at a high speed while holding the current
+     * heading. See {@link #driveDistanceHoldingHeading(double, int)}.
+     * 
+     * @param distance
+     *            the distance in cm to drive
+     * @return false if the robot got stuck before covering the distance
+     * 
+     * @author Julian Armour
+     * @since April 8, 2019
+     */
+    public boolean driveDistanceHoldingHeading(double distance) {
+        return driveDistanceHoldingHeading(distance, HEADING_HOLD_SPEED);
+    }
+
+    /**
+     * Drives forward in a straight line while holding the heading the robot had
+     * when it started. At every odometer update, the wheel speeds are trimmed in
+     * proportion to the heading error and its rate of change, so small mismatches
+     * between the motors don't add up over long drives. The thread waits until
+     * the distance is covered, or until the wheels stop making progress, like
+     * when the robot is jammed in the tunnel.
+     * 
+     * @param distance
+     *            the distance in cm to drive, backward drives fall back to
+     *            {@link #driveDistance(double)}
+     * @param speed
+     *            the speed in deg/sec
+     * @return false if the robot got stuck before covering the distance
+     * 
+     * @author Julian Armour
+     * @since April 8, 2019
+     */
+    public boolean driveDistanceHoldingHeading(double distance, int speed) {
+        if (distance <= 0) {
+            driveDistance(distance);
+            return true;
+        }
+        double heading = odometer.getXYT()[2];
+        int target = convertDistance(wheelRadius, distance);
+        // the wheels are stopped early enough to come to rest on the target
+        int brakingAngle = speed * speed / (2 * ACCELERATION);
+        int leftStart = leftMotor.getTachoCount();
+        int rightStart = rightMotor.getTachoCount();
+        double lastError = 0;
+        int checkpoint = 0;
+        int periods = 0;
+
+        odometer.setTrack((track_turnCW + track_turnCCW) / 2);
+        setTrajectoryAcceleration(false);
+        setWheelSpeeds(speed, speed);
+        forwardWheels();
+        int progress = 0;
+        while (progress < target - brakingAngle) {
+            if (++periods == HEADING_HOLD_STALL_PERIODS) {
+                if (progress - checkpoint < HEADING_HOLD_MIN_PROGRESS) {
+                    stopMotors();
+                    return false;
+                }
+                checkpoint = progress;
+                periods = 0;
+            }
+            // positive when the robot has to turn clockwise to get back on its heading
+            double error = TrajectoryPlanner.angleDifference(odometer.getXYT()[2], heading);
+            double trim = HEADING_HOLD_KP * error
+                    + HEADING_HOLD_KD * (error - lastError) * 1000 / Odometer.ODOMETER_PERIOD;
+            trim = Math.max(-HEADING_HOLD_MAX_TRIM, Math.min(HEADING_HOLD_MAX_TRIM, trim));
+            setWheelSpeeds(speed + (int) trim, speed - (int) trim);
+            lastError = error;
+            Delay.msDelay(Odometer.ODOMETER_PERIOD);
+            progress = ((leftMotor.getTachoCount() - leftStart) + (rightMotor.getTachoCount() - rightStart)) / 2;
+        }
+        stopMotors();
+        return true;
     }
 
     /**
      * Causes the robot to drive forward until {@link #stopMotors()} is called.
      */
     public void driveForward() {
-        leftMotor.setSpeed(FORWARD_SPEED);
-        rightMotor.setSpeed(FORWARD_SPEED);
-
-        leftMotor.forward();
-        rightMotor.forward();
+        driveForward(FORWARD_SPEED);
     }
 
     /**
@@ -226,20 +396,21 @@ public class MovementController {
      *            value in deg/sec
      */
     public void driveForward(int speed) {
-        leftMotor.setSpeed(speed);
-        rightMotor.setSpeed(speed);
-
-        leftMotor.forward();
-        rightMotor.forward();
-        // driveDistance(15, true);
+        setWheelSpeeds(speed, speed);
+        forwardWheels();
     }
 
     /**
-     * Causes the robot to stop.
+     * Causes the robot to stop. Both wheels stop in the same regulator tick and the
+     * thread waits until they are stopped.
      */
     public void stopMotors() {
+        leftMotor.startSynchronization();
         leftMotor.stop(true);
-        rightMotor.stop(false);
+        rightMotor.stop(true);
+        leftMotor.endSynchronization();
+        leftMotor.waitComplete();
+        rightMotor.waitComplete();
     }
 
     public void stopMotor(boolean right, boolean immediateReturn) {
@@ -251,6 +422,237 @@ public class MovementController {
 
     }
 
+    /**
+     * @param right
+     *            true for the right wheel, false for the left wheel
+     * @return the wheel's tacho count in degrees
+     * 
+     * @author Julian Armour
+     * @since April 13, 2019
+     */
+    public int getTachoCount(boolean right) {
+        return right ? rightMotor.getTachoCount() : leftMotor.getTachoCount();
+    }
+
+    /**
+     * @param right
+     *            true for the right wheel, false for the left wheel
+     * @return the speed in deg/sec the wheel is actually turning at, which lags
+     *         behind the speed it was set to when accelerating
+     * 
+     * @author Julian Armour
+     * @since April 13, 2019
+     */
+    public int getRotationSpeed(boolean right) {
+        return right ? rightMotor.getRotationSpeed() : leftMotor.getRotationSpeed();
+    }
+
+    /**
+     * Turns both wheels to absolute tacho counts, see
+     * {@link #getTachoCount(boolean)}. Both wheels start in the same regulator
+     * tick and the thread waits until they are done.
+     * 
+     * @param leftTacho
+     *            the tacho count in degrees the left wheel turns to
+     * @param rightTacho
+     *            the tacho count in degrees the right wheel turns to
+     * @param speed
+     *            the speed of the wheels in deg/sec
+     * 
+     * @author Julian Armour
+     * @since April 13, 2019
+     */
+    public void rotateWheelsTo(int leftTacho, int rightTacho, int speed) {
+        setWheelSpeeds(speed, speed);
+        synchronized (motionLock) {
+            if (motionCancelled()) {
+                return;
+            }
+            leftMotor.startSynchronization();
+            leftMotor.rotateTo(leftTacho, true);
+            rightMotor.rotateTo(rightTacho, true);
+            leftMotor.endSynchronization();
+        }
+        leftMotor.waitComplete();
+        rightMotor.waitComplete();
+    }
+
+    /**
+     * Travels through all the waypoints in one continuous motion. Corners are
+     * rounded into arcs where possible, so the robot only stops at the last
+     * waypoint or where it has to turn in place. The path is tracked in closed
+     * loop with the odometer by a {@link PathFollower}.
+     * 
+     * @param waypoints
+     *            the positions {x, y} to go through, see
+     *            {@link TrajectoryPlanner#plan(double[], List)}
+     * 
+     * @author Julian Armour
+     * @since April 6, 2019
+     */
+    public void travelAlong(List<float[]> waypoints) {
+        pathFollower.follow(trajectoryPlanner.plan(odometer.getXYT(), waypoints));
+    }
+
+    /**
+     * Sets the acceleration used while following a trajectory, which is high so the
+     * wheels keep up with the speed commands, or restores the normal acceleration.
+     * 
+     * @param trajectory
+     *            true to use the trajectory acceleration
+     * 
+     * @author Julian Armour
+     * @since April 7, 2019
+     */
+    void setTrajectoryAcceleration(boolean trajectory) {
+        int acceleration = trajectory ? TRAJECTORY_MOTOR_ACC : ACCELERATION;
+        leftMotor.setAcceleration(acceleration);
+        rightMotor.setAcceleration(acceleration);
+    }
+
+    /**
+     * Sets the speed of both wheels from their speed on the ground. Wheels are
+     * never slower than the minimum trajectory speed, so the robot doesn't stall.
+     * 
+     * @param leftSpeed
+     *            the left wheel's speed in cm/s
+     * @param rightSpeed
+     *            the right wheel's speed in cm/s
+     * 
+     * @author Julian Armour
+     * @since April 7, 2019
+     */
+    void setLinearWheelSpeeds(double leftSpeed, double rightSpeed) {
+        setWheelSpeeds(
+                Math.max(MIN_TRAJECTORY_SPEED, (int) toWheelSpeed(leftSpeed)),
+                Math.max(MIN_TRAJECTORY_SPEED, (int) toWheelSpeed(rightSpeed))
+        );
+    }
+
+    /**
+     * @param wheelSpeed
+     *            a wheel's rotation in deg or deg/sec
+     * @return the distance in cm or speed in cm/s of the wheel on the ground
+     */
+    private double toLinearSpeed(double wheelSpeed) {
+        return wheelSpeed * Math.PI * wheelRadius / 180.0;
+    }
+
+    /**
+     * @param linearSpeed
+     *            a speed in cm/s
+     * @return the wheel speed in deg/sec
+     */
+    private double toWheelSpeed(double linearSpeed) {
+        return linearSpeed * 180.0 / (Math.PI * wheelRadius);
+    }
+
+    /**
+     * Starts rotating both wheels by their own angle. Both rotations start in the
+     * same regulator tick.
+     * 
+     * @param leftAngle
+     *            the angle in degrees the left wheel rotates
+     * @param rightAngle
+     *            the angle in degrees the right wheel rotates
+     * @param immediateReturn
+     *            If true, do not wait for the move to complete
+     * 
+     * @author Julian Armour
+     * @since April 5, 2019
+     */
+    private void rotateWheels(int leftAngle, int rightAngle, boolean immediateReturn) {
+        synchronized (motionLock) {
+            if (motionCancelled()) {
+                return;
+            }
+            leftMotor.startSynchronization();
+            leftMotor.rotate(leftAngle, true);
+            rightMotor.rotate(rightAngle, true);
+            leftMotor.endSynchronization();
+        }
+        if (!immediateReturn) {
+            leftMotor.waitComplete();
+            rightMotor.waitComplete();
+        }
+    }
+
+    /**
+     * Makes both wheels rotate forward until they are stopped. Both wheels start in
+     * the same regulator tick.
+     * 
+     * @author Julian Armour
+     * @since April 5, 2019
+     */
+    void forwardWheels() {
+        synchronized (motionLock) {
+            if (motionCancelled()) {
+                return;
+            }
+            leftMotor.startSynchronization();
+            leftMotor.forward();
+            rightMotor.forward();
+            leftMotor.endSynchronization();
+        }
+    }
+
+    /**
+     * Sets the motion the calling thread runs for the {@link MotionExecutor}.
+     * Once the motion is cancelled, the wheels won't start on that thread, so a
+     * cancel that lands just before a motion starts the motors still stops it.
+     * 
+     * @param future
+     *            the running motion, or <code>null</code> once it returned
+     * 
+     * @author Julian Armour
+     * @since April 13, 2019
+     */
+    void guardMotion(MotionFuture future) {
+        synchronized (motionLock) {
+            guardedMotion = future;
+            guardedThread = future == null ? null : Thread.currentThread();
+        }
+    }
+
+    /**
+     * Stops the motors of a cancelled motion, see {@link #guardMotion(MotionFuture)}.
+     * 
+     * @author Julian Armour
+     * @since April 13, 2019
+     */
+    void stopGuardedMotion() {
+        synchronized (motionLock) {
+            stopMotors();
+        }
+    }
+
+    /**
+     * @return true if the calling thread runs a motion that was cancelled
+     */
+    private boolean motionCancelled() {
+        return guardedMotion != null && guardedThread == Thread.currentThread()
+                && guardedMotion.isCancelRequested();
+    }
+
+    /**
+     * Sets the speed of both wheels. If the wheels are moving, both speed changes
+     * take effect in the same regulator tick.
+     * 
+     * @param leftSpeed
+     *            the left wheel's speed in deg/sec
+     * @param rightSpeed
+     *            the right wheel's speed in deg/sec
+     * 
+     * @author Julian Armour
+     * @since April 5, 2019
+     */
+    private void setWheelSpeeds(int leftSpeed, int rightSpeed) {
+        leftMotor.startSynchronization();
+        leftMotor.setSpeed(leftSpeed);
+        rightMotor.setSpeed(rightSpeed);
+        leftMotor.endSynchronization();
+    }
+
     /**
      * This method allows the conversion of a distance to the total rotation of each
      * wheel needed to cover that distance.
@@ -352,10 +754,8 @@ public class MovementController {
      *            how sensitive the turn will be
      */
     public void turnLeft(int motorSpeed, int delta) {
-        leftMotor.setSpeed(motorSpeed - delta);
-        rightMotor.setSpeed(motorSpeed + delta);
-        leftMotor.forward();
-        rightMotor.forward();
+        setWheelSpeeds(motorSpeed - delta, motorSpeed + delta);
+        forwardWheels();
     }
 
     /**
@@ -368,10 +768,8 @@ public class MovementController {
      * @since September 21, 2019
      */
     public void turnRight(int motorSpeed, int delta) {
-        leftMotor.setSpeed(motorSpeed + delta);
-        rightMotor.setSpeed(motorSpeed - delta);
-        leftMotor.forward();
-        rightMotor.forward();
+        setWheelSpeeds(motorSpeed + delta, motorSpeed - delta);
+        forwardWheels();
     }
 
     /**
@@ -417,6 +815,37 @@ public class MovementController {
         driveDistance(calculateDistance(odometer.getXYT()[0], odometer.getXYT()[1], x, y), immediateReturn);
     }
 
+    /**
+     * Travels the robot to a specific position (x,y), driving either forward or in
+     * reverse.
+     * 
+     * @param x
+     *            the physical x position
+     * @param y
+     *            the physical y position
+     * @param reverse
+     *            if true, the robot backs up to the position
+     * @param immediateReturn
+     *            if true, do not wait for the move to complete
+     * 
+     * @see HeadingPlanner
+     * 
+     * @author Julian Armour
+     * @since April 10, 2019
+     */
+    public void travelTo(double x, double y, boolean reverse, boolean immediateReturn) {
+        if (!reverse) {
+            travelTo(x, y, immediateReturn);
+            return;
+        }
+        double angle = calculateAngle(odometer.getXYT()[0], odometer.getXYT()[1], x, y);
+        turnTo((angle + 180) % 360);
+
+        // give the robot some time to stop
+        Delay.msDelay(250);
+        driveDistance(-calculateDistance(odometer.getXYT()[0], odometer.getXYT()[1], x, y), immediateReturn);
+    }
+
     /**
      * 
      * @return the angle of the odometer, roundest to the nearest 0,90,180,270 angle
@@ -1,6 +1,6 @@
 package ca.mcgill.ecse211.navigators;
 
-import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 
 import ca.mcgill.ecse211.Main;
@@ -15,20 +15,30 @@ import lejos.utility.Delay;
  * 
  * @author Cedric Barre, Julian Armour
  * @since 25th of March 2019
- * @version 2
+ * @version 3
  */
 public class Navigator {
     // constants
+    /**
+     * The largest error (cm) allowed at the end of a leg before the robot
+     * localizes at its start, see
+     * {@link Localization#quickLocalizationIfNeeded(double, double)}
+     */
+    public static final double  LEG_TOLERANCE         = 5;
+    // position error (cm) after localizing past the tunnel
+    private static final double TUNNEL_POSITION_SIGMA = 1;
 
     // dependencies
     private MovementController move;
     private Odometer           odo;
     private Localization       localizer;
     private CanSearch          canSearcher;
+    private FieldMap           fieldMap;
+    private RoutePlanner       routePlanner;
+    private RouteCache         routeCache;
     // fields
     private float              tileSize;
-    private int                TLLX, TLLY, TURX, TURY, STZLLX, STZLLY, STZURX, STZURY, ILLX, ILLY, IURX, IURY;
-    private int                bridgeTileLength;
+    private int                TLLX, TLLY, TURX, TURY;
     private int                SC;
     private double             lightSensorToWheelbase;
     private int[]              searchZoneLL;
@@ -57,24 +67,16 @@ public class Navigator {
         this.TLLY = tunnelLL[1];
         this.TURX = TUR[0];
         this.TURY = TUR[1];
-        this.STZLLX = STZLL[0]; // Set starting zone coordinates
-        this.STZLLY = STZLL[1];
-        this.STZURX = STZUR[0];
-        this.STZURY = STZUR[1];
-        this.ILLX = ILL[0]; // Set search zone coordinates
-        this.ILLY = ILL[1];
-        this.IURX = IUR[0];
-        this.IURY = IUR[1];
         // set search zone coordinates
         this.searchZoneLL = searchZoneLL;
         this.searchZoneUR = searchZoneUR;
         this.localizer = localizer;
         this.SC = SC;
         this.lightSensorToWheelbase = Main.LT_SENSOR_TO_WHEELBASE;
-        // Calculate bridge length from coordinates
-        this.bridgeTileLength = (Math.abs(TLLX - TURX) > Math.abs(TLLY - TURY)) ? Math.abs(TLLX - TURX)
-                : Math.abs(TLLY - TURY);
         this.tileSize = tileSize;
+        // map of the field used to plan the routes to and through the tunnel
+        this.fieldMap = new FieldMap(STZLL, STZUR, ILL, IUR, tunnelLL, TUR, searchZoneLL, searchZoneUR);
+        this.routePlanner = new RoutePlanner(fieldMap, tileSize);
 
     }
     
@@ -88,6 +90,35 @@ public class Navigator {
         this.canSearcher = canSearch;
     }
 
+    /**
+     * Plans all the routes of the mission so trips don't have to plan them again.
+     * This should be called once the scan and dumping points are set.
+     * 
+     * @see RouteCache
+     * 
+     * @author Julian Armour
+     * @since April 9, 2019
+     */
+    public void precomputeRoutes() {
+        double[] startingCorner;
+        switch (SC) {
+        case 1:
+            startingCorner = new double[] { 14 * tileSize, tileSize, 0 };
+            break;
+        case 2:
+            startingCorner = new double[] { 14 * tileSize, 8 * tileSize, 270 };
+            break;
+        case 3:
+            startingCorner = new double[] { tileSize, 8 * tileSize, 180 };
+            break;
+        default:
+            startingCorner = new double[] { tileSize, tileSize, 90 };
+            break;
+        }
+        routeCache = new RouteCache(routePlanner, startingCorner, canSearcher.getDumpingPoints());
+        System.out.println(routeCache);
+    }
+
     /**
      * @deprecated was used for the demo
      * 
@@ -143,17 +174,16 @@ public class Navigator {
         dest[1] = curPos[1];//keep the y-pos the same
         // travel w.r.t current scan point's x-pos
         move.turnTo(move.calculateAngle(curPos[0], curPos[1], dest[0], dest[1]));
-        localizer.quickLocalization();
-        move.travelTo(dest[0], dest[1], false);
-        // set dest w.r.t current scan point's y-pos
-        curPos = odo.getXYT();
-        dest[0] = curPos[0];
-        dest[1] = currentScanPoint[1];
-        // travel w.r.t current scan point's y-pos
-        move.turnTo(move.calculateAngle(curPos[0], curPos[1], dest[0], dest[1]));
-        localizer.quickLocalization();
-        move.travelTo(dest[0], dest[1], false);
-        move.travelTo(currentScanPoint[0], currentScanPoint[1], false);
+        localizer.quickLocalizationIfNeeded(
+                Math.abs(dest[0] - curPos[0]) + Math.abs(currentScanPoint[1] - curPos[1]), LEG_TOLERANCE);
+        // drive to the x-pos, then to the y-pos and around the corner to the scan
+        // point without stopping. The path follower corrects the drift on the way,
+        // so there is no need to localize at the corner.
+        List<float[]> waypoints = new LinkedList<float[]>();
+        waypoints.add(new float[] { (float) dest[0], (float) dest[1] });
+        waypoints.add(new float[] { (float) dest[0], currentScanPoint[1] });
+        waypoints.add(currentScanPoint);
+        move.travelAlong(waypoints);
         if (currentScanPoint == canSearcher.getScanningPoints().get(0)) {
             Beeper.arrivedAtSearchZone();
         }
@@ -200,7 +230,7 @@ public class Navigator {
         // at this point the robot should be at searchzone's lower left. Localize to
         // make sure
         localizer.completeQuickLocalization();
-    }
+    }
 	
     /**
      * determines if a point is intersecting the tunnel
@@ -231,454 +261,164 @@ public class Navigator {
      * @since March 26, 2019
      */
     public void travelToNearestDumpingPoint() {
-        float[] closestPoint = null;
-        
-        List<float[]> dumpointPoints = canSearcher.getDumpingPoints();
-        Iterator<float[]> it = dumpointPoints.iterator();
-        float[] p;
-        while (it.hasNext()) {
-            if (closestPoint == null) {
-                closestPoint = it.next();
-                p = closestPoint;
-            } else { 
-            	p = (float[]) it.next();
+        // go around the search zone to the closest dumping point's tile first
+        double[] curPos = odo.getXYT();
+        float[] from = { (float) curPos[0], (float) curPos[1] };
+        Route route = routeCache == null ? null : routeCache.toDumpingPoint(curPos);
+        if (route != null) {
+            followRoute(route, false, false);
+            List<float[]> waypoints = route.getWaypoints();
+            if (!waypoints.isEmpty()) {
+                from = waypoints.get(waypoints.size() - 1);
             }
-            if (!pointIsOnTunnel(p)) {// point p isn't on the tunnel
-                // compare distances current closest point with p
-                double[] curPos = odo.getXYT();
-                // no need for sqrt when simply checking which is larger 
-                double dCurSquared = Math.pow(closestPoint[0]-curPos[0], 2)+Math.pow(closestPoint[1]-curPos[1], 2);
-                double dPSquared = Math.pow(closestPoint[0]-p[0], 2)+Math.pow(closestPoint[1]-p[1], 2);
-                if (dPSquared < dCurSquared) {
-                    closestPoint = p;
-                }
+        }
+        
+        // the dumping point the route led to, or the closest one without a route
+        float[] closestPoint = null;
+        double closestDistance = Double.MAX_VALUE;
+        for (float[] p : canSearcher.getDumpingPoints()) {
+            double distance = Math.hypot(p[0] - from[0], p[1] - from[1]);
+            if (!pointIsOnTunnel(p) && distance < closestDistance) {
+                closestPoint = p;
+                closestDistance = distance;
             }
         }
-        // after finding closest point, travel to it
-        move.travelTo(closestPoint[0], closestPoint[1], false);
-        // face 270 or 90 depending on starting corner
-        if (SC == 0 || SC == 3) {
-            move.turnTo(270);//face West
-        } else {
-            move.turnTo(90);//face East
+        if (closestPoint == null) {
+            return;
         }
+        // face 270 or 90 depending on starting corner
+        int finalHeading = (SC == 0 || SC == 3) ? 270 : 90;
+        // after finding closest point, travel to it, backing up if it saves turning
+        List<float[]> leg = new LinkedList<float[]>();
+        leg.add(closestPoint);
+        boolean reverse = HeadingPlanner.plan(odo.getXYT(), leg, null, finalHeading)[0];
+        move.travelTo(closestPoint[0], closestPoint[1], reverse, false);
+        move.turnTo(finalHeading);
     }
     
     /**
      * Travel to the tunnel from either the starting point or any point on the
-     * island
+     * island. The route is planned on the {@link FieldMap}. The robot ends facing
+     * the tunnel, right after localizing on its entrance line.
      * 
      * @param direction
      *            Boolean, if true, robot is going to the tunnel from the starting
      *            zone, if false the robot is going to the tunnel from the search
      *            zone
      *            
-     * @author Cedric Barre
+     * @author Cedric Barre, Julian Armour
      * @since March 25, 2019
      */
-	public void travelToTunnel(boolean direction) {
-
-		boolean OP1 = true;
-		int turnToTunnel = 0;
-		double tunnelTilePosYOP2 = 0, tunnelTilePosXOP2 = 0, tunnelTilePosXOP1 = 0, tunnelTilePosYOP1 = 0;
-		if(direction) { //If robot is going to tunnel in starting zone, use these parameters
-			switch(SC) {
-			case 0:
-				if(TURX > STZURX) {
-					OP1 = true;
-					turnToTunnel = 90;
-					tunnelTilePosXOP1 = TLLX-1;
-					tunnelTilePosYOP1 = TLLY + 0.5;
-				} else {
-					OP1 = false;
-					tunnelTilePosYOP2 = TLLY - 1;
-					tunnelTilePosXOP2 = TURX - 0.5;
-					turnToTunnel = 0;
-				}
-				break;
-			case 1:
-				if(TLLX < STZLLX) {
-					OP1 = true;
-					tunnelTilePosXOP1 = TURX + 1;
-					tunnelTilePosYOP1 = TURY - 0.5;
-					turnToTunnel = 270;
-				} else { 
-					OP1 = false;
-					tunnelTilePosXOP2 = TURX - 0.5;
-					tunnelTilePosYOP2 = TLLY - 1;
-					turnToTunnel = 0;
-				}
-				break;
-			case 2:
-				if(TLLX < STZLLX) {
-					OP1 = true;
-					tunnelTilePosXOP1 = TURX + 1;
-					tunnelTilePosYOP1 = TURY - 0.5;
-					turnToTunnel = 270;
-				} else {
-					OP1 = false;
-					tunnelTilePosYOP2 = TURY + 1;
-					tunnelTilePosXOP2 = TURX - 0.5;
-					turnToTunnel = 180;
-				}
-				break;
-			case 3:
-				if(TURX > STZURX) {
-					OP1 = true;
-					turnToTunnel = 90;
-					tunnelTilePosXOP1 = TLLX-1;
-					tunnelTilePosYOP1 = TLLY + 0.5;
-				} else {
-					OP1 = false;
-					tunnelTilePosYOP2 = TURY + 1;
-					tunnelTilePosXOP2 = TURX - 0.5;
-					turnToTunnel = 180;
-				}
-				break;
-			default:
-				break;
-			}
-		} else { //If robot is going to tunnel from search zone, use these parameters
-			switch(SC) {
-			case 0:
-				if(TURX > STZURX) {
-					OP1 = true;
-					turnToTunnel = 270;
-					tunnelTilePosXOP1 = TURX + 1;
-					tunnelTilePosYOP1 = TURY - 0.5;
-				} else {
-					OP1 = false;
-					tunnelTilePosYOP2 = TURY - 0.5;
-					tunnelTilePosXOP2 = TURX + 1;
-					turnToTunnel = 180;
-				}
-				break;
-			case 1:
-				if(TLLX < STZLLX) {
-					OP1 = true;
-					tunnelTilePosXOP1 = TLLX - 1;
-					tunnelTilePosYOP1 = TURY + 0.5;
-					turnToTunnel = 90;
-				} else { 
-					OP1 = false;
-					tunnelTilePosXOP2 = TURX - 0.5;
-					tunnelTilePosYOP2 = TURY + 1;
-					turnToTunnel = 180;
-				}
-				break;
-			case 2:
-				if(TLLX < STZLLX) {
-					OP1 = true;
-					tunnelTilePosXOP1 = TLLX - 1;
-					tunnelTilePosYOP1 = TLLY + 0.5;
-					turnToTunnel = 90;
-				} else {
-					OP1 = false;
-					tunnelTilePosYOP2 = TLLY - 1;
-					tunnelTilePosXOP2 = TLLX + 0.5;
-					turnToTunnel = 0;
-				}
-				break;
-			case 3:
-				if(TURX > STZURX) {
-					OP1 = true;
-					turnToTunnel = 270;
-					tunnelTilePosXOP1 = TURX + 1;
-					tunnelTilePosYOP1 = TURY - 0.5;
-				} else {
-					OP1 = false;
-					tunnelTilePosYOP2 = TLLY - 1;
-					tunnelTilePosXOP2 = TLLX + 0.5;
-					turnToTunnel = 0;
-				}
-				break;
-			default:
-				break;
-			}
-		}
-		if(OP1) { 
-		    //Path 1 to tunnel depending on tunnel position: if the tunnel is on the east or west side of the starting zone
-		    //Move to the x position on the grid line before the tunnel
-			move.travelTo(tunnelTilePosXOP1*tileSize, odo.getXYT()[1], false); 
-		    localizer.quickLocalization();
-			move.driveDistance(-lightSensorToWheelbase);
-			//turn to to the y position between gridlines before the tunnel
-			move.turnTo(move.calculateAngle(odo.getXYT()[0], odo.getXYT()[1], odo.getXYT()[0], tunnelTilePosYOP1 * tileSize));
-			localizer.quickLocalization();
-			if (move.roundAngle() == 0) {
-                //Move the to y position on the grid line in front of the tunnel
-                move.travelTo(odo.getXYT()[0], (tunnelTilePosYOP1 - 0.5) * tileSize, false);
-            } else {
-                move.travelTo(odo.getXYT()[0], (tunnelTilePosYOP1 + 0.5) * tileSize, false);
-            }
-            // correct odometer
-			localizer.quickLocalization();
-			//Move the to y position on the grid line in the middle of the tile in front of the tunnel
-            move.travelTo(odo.getXYT()[0], tunnelTilePosYOP1*tileSize, false);
-            // finally face the tunnel entrance
-			move.turnTo(turnToTunnel);
-			localizer.quickLocalization(); //Make sure we are well facing the tunnel
-			Delay.msDelay(500);
-		}
-		else {
-		    //Path 2 to tunnel depending on position: if tunnel is on the north or south side of the starting zone
-			// move to y position on the grid line before the tunnel
-		    move.travelTo(odo.getXYT()[0], tunnelTilePosYOP2*tileSize, false);
-			localizer.quickLocalization();
-			move.driveDistance(-lightSensorToWheelbase);
-			// turn to the x position between gridlines before the tunnel
-			move.turnTo(move.calculateAngle(odo.getXYT()[0], odo.getXYT()[1], tunnelTilePosXOP2*tileSize, odo.getXYT()[1]));
-            localizer.quickLocalization();
-            //Move the to x position on the grid line in front of the tunnel
-            if (move.roundAngle() == 90) {
-                move.travelTo((tunnelTilePosXOP2 - 0.5)*tileSize, odo.getXYT()[1], false);
-            } else {
-                move.travelTo((tunnelTilePosXOP2 + 0.5)*tileSize, odo.getXYT()[1], false);
+    public void travelToTunnel(boolean direction) {
+        double[] curPos = odo.getXYT();
+        Route route = routeCache == null ? null : routeCache.toTunnel(direction, curPos);
+        if (route == null) {
+            route = routePlanner.plan(
+                    curPos, fieldMap.getTunnelApproachTile(direction), fieldMap.getTunnelHeading(direction)
+            );
+        }
+        followRoute(route, true, true);
+        Delay.msDelay(500);
+    }
+
+    /**
+     * Follows a route planned by the {@link RoutePlanner}. Legs that don't start
+     * with a localization may be driven in reverse when it saves rotating, see
+     * {@link HeadingPlanner}.
+     * 
+     * @param route
+     *            the route to follow
+     * @param localizeLegs
+     *            if true, the robot localizes at the start of straight legs
+     *            where the odometer could drift too far
+     * @param localizeAtEnd
+     *            if true, the robot localizes once it faces its final heading
+     * 
+     * @author Julian Armour
+     * @since April 8, 2019
+     */
+    private void followRoute(Route route, boolean localizeLegs, boolean localizeAtEnd) {
+        List<float[]> waypoints = route.getWaypoints();
+        double[] curPos = odo.getXYT();
+        // only correct the odometer at the start of long legs along a grid line
+        boolean[] localize = new boolean[waypoints.size()];
+        double x = curPos[0];
+        double y = curPos[1];
+        for (int i = 0; i < localize.length; i++) {
+            float[] waypoint = waypoints.get(i);
+            double dX = Math.abs(waypoint[0] - x);
+            double dY = Math.abs(waypoint[1] - y);
+            localize[i] = localizeLegs && Math.min(dX, dY) < tileSize / 4 && Math.max(dX, dY) > tileSize * 3 / 4;
+            x = waypoint[0];
+            y = waypoint[1];
+        }
+        boolean[] reverse = HeadingPlanner.plan(
+                curPos, waypoints, localize, localizeAtEnd ? route.getFinalHeading() : -1
+        );
+
+        for (int i = 0; i < localize.length; i++) {
+            float[] waypoint = waypoints.get(i);
+            if (localize[i]) {
+                curPos = odo.getXYT();
+                move.turnTo(move.calculateAngle(curPos[0], curPos[1], waypoint[0], waypoint[1]));
+                localizer.quickLocalizationIfNeeded(
+                        move.calculateDistance(curPos[0], curPos[1], waypoint[0], waypoint[1]), LEG_TOLERANCE);
             }
-			// correct odometer
+            move.travelTo(waypoint[0], waypoint[1], reverse[i], false);
+        }
+        if (localizeAtEnd) {
+            // always localized, this also puts the robot on the line it faces
+            move.turnTo(route.getFinalHeading());
             localizer.quickLocalization();
-            //Move the to x position on the grid line in the middle of the tile in front of the tunnel
-            move.travelTo(tunnelTilePosXOP2*tileSize, odo.getXYT()[1], false);
-			// finally face the tunnel entrance
-			move.turnTo(turnToTunnel);
-			localizer.quickLocalization(); //Make sure we are well facing the tunnel
-			Delay.msDelay(500);
-		}
-	}
-	
-	
-	/**
-	 * Travel across the tunnel from front to back or from back to front
-	 * @param direction Boolean: if true, the robot is going from starting zone to search zone, if false, the robot is going from search zone to starting zone
-	 * 
-	 * @author Cedric Barre
-	 * @since March 9, 2019
-	 */
-	public void travelThroughTunnel(boolean direction) {
-		int posCorX = 0, posCorY = 0;
-		int thetaCor = 0;
-		boolean turnLoc = true;
-		if (direction) { //If robot is going from starting zone to search zone, these are the parameters to use
-			switch(SC) {
-			case 0:
-				if(TURX > STZURX) {
-					if(TURY == IURY) {
-						turnLoc = true;
-						posCorX = TURX + 1;
-						posCorY = TURY - 1;
-					} else {
-						turnLoc = false;
-						posCorX = TURX + 1;
-						posCorY = TURY;
-					}
-				} else {
-					if(TURX == IURX) {
-						turnLoc = false;
-						posCorX = TURX - 1;
-						posCorY = TURY + 1;
-					} else {
-						turnLoc = true;
-						posCorX = TURX;
-						posCorY = TURY + 1;
-					}
-				}
-				break;
-			case 1:
-				if(TLLX < STZLLX) {
-					if(TURY == IURY) {
-						turnLoc = false;
-						posCorX = TLLX - 1;
-						posCorY = TLLY;
-					} else {
-						turnLoc = true;
-						posCorX = TLLX - 1;
-						posCorY = TLLY + 1;
-					}
-				} else { 
-					if(TLLX == ILLX) {
-						turnLoc = true; 
-						posCorX = TURX;
-						posCorY = TURY + 1;
-					} else {
-						turnLoc = false;
-						posCorX = TURX - 1;
-						posCorY = TURY + 1;
-					}
-					
-				}
-				break;
-			case 2:
-				if(TLLX < STZLLX) {
-					if(TLLY == ILLY) {
-						turnLoc = true; 
-						posCorX = TLLX - 1;
-						posCorY = TLLY + 1;
-					} else {
-						turnLoc = false;
-						posCorX = TLLX - 1;
-						posCorY = TLLY;
-					}
-				} else {
-					if(TLLX == ILLX) {
-						turnLoc = false;
-						posCorX = TLLX + 1;
-						posCorY = TLLY - 1;
-					} else {
-						turnLoc = true;
-						posCorX = TLLX;
-						posCorY = TLLY - 1;
-					}
-				}
-				break;
-			case 3:
-				if(TURX > STZURX) {
-					if(TLLY == ILLY) {
-						turnLoc = false;
-						posCorX = TURX + 1;
-						posCorY = TURY;
-					} else {
-						turnLoc = true;
-						posCorX = TURX + 1;
-						posCorY = TURY - 1;
-					}
-				} else {
-					if(TLLX == ILLX) {
-						turnLoc = false;
-						posCorX = TLLX + 1;
-						posCorY = TLLY - 1;
-					} else {
-						turnLoc = true;
-						posCorX = TLLX;
-						posCorY = TLLY - 1;
-					}
-				}
-				break;
-				default:
-					break;
-			}
-		} else { //If robot is going from search zone to starting zone, these are the parameters to use
-			switch(SC) {
-			case 0:
-				if(TURX > STZURX) {
-					if(TLLY == STZLLY) {
-						turnLoc = true;
-						posCorX = TLLX - 1;
-						posCorY = TLLY + 1;
-					} else {
-						turnLoc = false;
-						posCorX = TLLX - 1;
-						posCorY = TLLY;
-					}
-				} else {
-					if(TLLX == STZLLX) {
-						turnLoc = false;
-						posCorX = TLLX + 1;
-						posCorY = TLLY - 1;
-					} else {
-						turnLoc = true;
-						posCorX = TLLX;
-						posCorY = TURY - 1;
-					}
-				}
-				break;
-			case 1:
-				if(TLLX < STZLLX) {
-					if(TLLY == ILLY) {
-						turnLoc = false;
-						posCorX = TURX + 1;
-						posCorY = TURY;
-					} else {
-						turnLoc = true;
-						posCorX = TURX + 1;
-						posCorY = TLLY - 1;
-					}
-				} else { 
-					if(TURX == IURX) {
-						turnLoc = true; 
-						posCorX = TLLX;
-						posCorY = TLLY - 1;
-					} else {
-						turnLoc = false;
-						posCorX = TLLX + 1;
-						posCorY = TLLY - 1;
-					}
-					
-				}
-				break;
-			case 2:
-				if(TLLX < STZLLX) {
-					if(TURY == STZURY) {
-						turnLoc = true; 
-						posCorX = TURX + 1;
-						posCorY = TURY - 1;
-					} else {
-						turnLoc = false;
-						posCorX = TURX + 1;
-						posCorY = TURY;
-					}
-				} else {
-					if(TURX == STZURX) {
-						turnLoc = false;
-						posCorX = TURX - 1;
-						posCorY = TURY + 1;
-					} else {
-						turnLoc = true;
-						posCorX = TURX;
-						posCorY = TURY + 1;
-					}
-				}
-				break;
-			case 3:
-				if(TURX > STZURX) {
-					if(TURY == STZURY) {
-						turnLoc = false;
-						posCorX = TLLX - 1;
-						posCorY = TLLY;
-					} else {
-						turnLoc = true;
-						posCorX = TLLX - 1;
-						posCorY = TLLY + 1;
-					}
-				} else {
-					if(TLLX == STZLLX) {
-						turnLoc = true;
-						posCorX = TURX;
-						posCorY = TLLY + 1;
-					} else {
-						turnLoc = false;
-						posCorX = TURX - 1;
-						posCorY = TURY + 1;
-					}
-				}
-				break;
-				default:
-					break;
-			}
-		}
-		
-		
-		
-		move.driveDistance((bridgeTileLength+2)*tileSize - lightSensorToWheelbase); //Cross tunnel
-
-		localizer.quickThetaCorrection(); //Correct angle and x position 
-		move.driveDistance(-lightSensorToWheelbase); 
-		move.rotateAngle(90, turnLoc);
-		
-		move.driveDistance(5);
-		localizer.quickThetaCorrection(); //Correct y position
-		move.driveDistance(-lightSensorToWheelbase);
-		
-		thetaCor = move.roundAngle(); //Update the odometer
-		odo.setXYT(posCorX*tileSize, posCorY*tileSize, thetaCor);
-		
-	}
-	
+        }
+    }
+
+    /**
+     * Travel across the tunnel from front to back or from back to front. This
+     * method should be called right after {@link #travelToTunnel(boolean)}. The
+     * robot localizes on the grid intersection past the tunnel's exit given by
+     * {@link FieldMap#getTunnelLanding(boolean)}.
+     * 
+     * @param direction
+     *            Boolean: if true, the robot is going from starting zone to search
+     *            zone, if false, the robot is going from search zone to starting
+     *            zone
+     * 
+     * @author Cedric Barre, Julian Armour
+     * @since March 9, 2019
+     */
+    public void travelThroughTunnel(boolean direction) {
+        int heading = fieldMap.getTunnelHeading(direction);
+        int[] landing = fieldMap.getTunnelLanding(direction);
+
+        // the robot is on the entrance line, drive to the line one tile past the exit
+        if (!move.driveDistanceHoldingHeading((fieldMap.getTunnelLength() + 1) * tileSize - lightSensorToWheelbase)) {
+            System.out.println("Stuck in the tunnel");
+        }
+
+        localizer.quickThetaCorrection(); //Correct angle and position along the tunnel
+        move.driveDistance(-lightSensorToWheelbase);
+        move.rotateAngle(90, landing[2] == (heading + 90) % 360);
+
+        move.driveDistance(5);
+        localizer.quickThetaCorrection(); //Correct position across the tunnel
+        move.driveDistance(-lightSensorToWheelbase);
+
+        odo.setXYT(landing[0] * tileSize, landing[1] * tileSize, move.roundAngle()); //Update the odometer
+        localizer.getUncertainty().localizedX(TUNNEL_POSITION_SIGMA);
+        localizer.getUncertainty().localizedY(TUNNEL_POSITION_SIGMA);
+    }
+    
 	/**
 	 * Makes the robot travel to the gridpoint intersection of it's starting tile
 	 * @author Cedric Barre
 	 * @since March 27, 2019
 	 */
     public void travelToStartingTile() {
+        // come back the way the robot went to the tunnel
+        if (routeCache != null && routeCache.getHome() != null) {
+            followRoute(routeCache.getHome(), true, false);
+        }
         switch (SC) {
         case 0:
             move.travelTo(tileSize, tileSize, false);
@@ -708,11 +448,43 @@ public class Navigator {
         } else {
             move.turnTo(90);
         }
-        localizer.quickLocalization();
-        move.driveDistance(tileSize/2);
+        // the route to the tunnel localizes at the start of its legs if needed
+        if (localizer.quickLocalizationIfNeeded(tileSize, LEG_TOLERANCE)) {
+            move.driveDistance(tileSize/2);
+        }
         
         travelToTunnel(false);
         travelThroughTunnel(false);
         travelToStartingTile();
     }
+
+    /**
+     * Travels in a straight line to a position at any heading, instead of along
+     * the grid lines. On long trips the robot corrects its odometer from the grid
+     * lines it crosses on the way, see {@link Localization#lineLocalization(double)},
+     * and aims at the position again after each correction.
+     * 
+     * @param x
+     *            the physical x position
+     * @param y
+     *            the physical y position
+     * 
+     * @author Julian Armour
+     * @since April 10, 2019
+     */
+    public void travelDiagonallyTo(double x, double y) {
+        while (true) {
+            double[] pose = odo.getXYT();
+            double remaining = Math.hypot(x - pose[0], y - pose[1]);
+            if (remaining < 1.5 * tileSize) {
+                break;
+            }
+            move.turnTo((float) x, (float) y);
+            // look for a line over the next tile and a half, stopping well short of the target
+            if (!localizer.lineLocalization(Math.min(1.5 * tileSize, remaining - tileSize / 2))) {
+                break;
+            }
+        }
+        move.travelTo(x, y, false);
+    }
 }
@@ -0,0 +1,152 @@
+package ca.mcgill.ecse211.navigators;
+
+import ca.mcgill.ecse211.odometer.Odometer;
+import lejos.utility.Delay;
+
+/**
+ * Closed-loop pure pursuit controller for following a {@link Trajectory}. At
+ * every odometer update, the robot steers towards a point on the path a
+ * lookahead distance ahead of it, so drift is corrected continuously instead of
+ * accumulating until the next localization.
+ * 
+ * @author Julian Armour
+ * @since April 7, 2019
+ * @version 1
+ */
+public class PathFollower {
+    // minimum and speed-proportional lookahead distance
+    private static final double MIN_LOOKAHEAD      = 8;
+    private static final double LOOKAHEAD_TIME     = 1.0;
+    // the robot has arrived when it is this close (cm) to the end of the path
+    private static final double END_TOLERANCE      = 0.5;
+    // how far ahead (cm) the closest path point is searched for
+    private static final double SEARCH_WINDOW      = 15;
+
+    private MovementController  movCon;
+    private Odometer            odo;
+    private double              track;
+
+    /**
+     * @param movementController
+     *            the {@link MovementController} driving the wheels
+     * @param odometer
+     *            the {@link Odometer}
+     * @param track
+     *            the distance between the wheels in cm
+     */
+    public PathFollower(MovementController movementController, Odometer odometer, double track) {
+        this.movCon = movementController;
+        this.odo = odometer;
+        this.track = track;
+    }
+
+    /**
+     * Follows a trajectory until its end. The thread waits until the robot has
+     * arrived.
+     * 
+     * @param trajectory
+     *            the trajectory to follow
+     */
+    public void follow(Trajectory trajectory) {
+        int size = trajectory.size();
+        if (size == 0) {
+            return;
+        }
+        int window = (int) (SEARCH_WINDOW / trajectory.getSpacing());
+        int closest = 0;
+        int lastTurn = -1;
+        boolean moving = false;
+        movCon.setTrajectoryAcceleration(true);
+        while (true) {
+            double[] pose = odo.getXYT();
+            closest = findClosest(trajectory, pose, closest, Math.min(size - 1, closest + window));
+
+            // stop and turn in place where the path has a sharp corner
+            int turnIndex = findTurn(trajectory, lastTurn + 1, closest);
+            if (turnIndex >= 0) {
+                if (moving) {
+                    movCon.stopMotors();
+                    moving = false;
+                }
+                // turn to the heading of the next leg, correcting any heading drift
+                movCon.setTrajectoryAcceleration(false);
+                movCon.turnTo(trajectory.getHeading(turnIndex));
+                movCon.setTrajectoryAcceleration(true);
+                lastTurn = turnIndex;
+                closest = turnIndex;
+                continue;
+            }
+
+            double endX = trajectory.getX(size - 1) - pose[0];
+            double endY = trajectory.getY(size - 1) - pose[1];
+            double theta = Math.toRadians(pose[2]);
+            double endAhead = endX * Math.sin(theta) + endY * Math.cos(theta);
+            if (closest >= size - 1 || Math.hypot(endX, endY) < END_TOLERANCE
+                    || (closest > size - 1 - window && endAhead <= 0)) {
+                // arrived, or went past the end of the path
+                break;
+            }
+
+            // aim for the speed of the next sample, the motors lag behind the command
+            double v = trajectory.getSpeed(Math.min(size - 1, closest + 1));
+            // the lookahead point is the first sample at least the lookahead distance
+            // away, without going past an in-place turn
+            double lookahead = Math.max(MIN_LOOKAHEAD, v * LOOKAHEAD_TIME);
+            int target = closest;
+            while (target < size - 1 && Math.hypot(trajectory.getX(target) - pose[0],
+                    trajectory.getY(target) - pose[1]) < lookahead && trajectory.getTurn(target + 1) == 0) {
+                target++;
+            }
+            double dx = trajectory.getX(target) - pose[0];
+            double dy = trajectory.getY(target) - pose[1];
+            // offset of the target to the right of the robot, and the curvature of
+            // the arc that reaches it
+            double lateral = dx * Math.cos(theta) - dy * Math.sin(theta);
+            double distSquared = dx * dx + dy * dy;
+            double k = distSquared > 0 ? 2 * lateral / distSquared : 0;
+
+            movCon.setLinearWheelSpeeds(v * (1 + k * track / 2), v * (1 - k * track / 2));
+            if (!moving) {
+                odo.setTrack(track);
+                movCon.forwardWheels();
+                moving = true;
+            }
+            Delay.msDelay(Odometer.ODOMETER_PERIOD);
+        }
+        movCon.stopMotors();
+        movCon.setTrajectoryAcceleration(false);
+    }
+
+    /**
+     * @return the index of the trajectory sample closest to the robot between two
+     *         indices
+     */
+    private static int findClosest(Trajectory trajectory, double[] pose, int from, int to) {
+        int closest = from;
+        double minDist = Double.MAX_VALUE;
+        for (int i = from; i <= to; i++) {
+            double dist = Math.hypot(trajectory.getX(i) - pose[0], trajectory.getY(i) - pose[1]);
+            if (dist < minDist) {
+                minDist = dist;
+                closest = i;
+            }
+            if (i > from && trajectory.getTurn(i) != 0) {
+                // don't skip past an in-place turn
+                break;
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * @return the index of the first in-place turn between two indices, or -1
+     */
+    private static int findTurn(Trajectory trajectory, int from, int to) {
+        for (int i = from; i <= to; i++) {
+            if (trajectory.getTurn(i) != 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,85 @@
+package ca.mcgill.ecse211.navigators;
+
+import java.util.List;
+
+/**
+ * A route planned by the {@link RoutePlanner}: the points where the robot
+ * changes direction, the heading it ends with, and what it is expected to cost.
+ * The robot localizes at the start of every straight leg and once more at the
+ * end of the route.
+ * 
+ * @author Julian Armour
+ * @since April 8, 2019
+ * @version 2
+ */
+public class Route {
+    private List<float[]> waypoints;
+    private int           localizations;
+    private int           finalHeading;
+    private int           turns;
+    private double        distance;
+    private double        estimatedTime;
+
+    Route(List<float[]> waypoints, int localizations, int finalHeading, int turns, double distance,
+            double estimatedTime) {
+        this.waypoints = waypoints;
+        this.localizations = localizations;
+        this.finalHeading = finalHeading;
+        this.turns = turns;
+        this.distance = distance;
+        this.estimatedTime = estimatedTime;
+    }
+
+    /**
+     * @return the positions {x, y} in cm the robot goes through, each one is the
+     *         centre of a tile
+     */
+    public List<float[]> getWaypoints() {
+        return waypoints;
+    }
+
+    /**
+     * @return the heading in degrees the robot faces at the end of the route
+     */
+    public int getFinalHeading() {
+        return finalHeading;
+    }
+
+    /**
+     * @return the number of 90 degree turns along the route
+     */
+    public int getTurns() {
+        return turns;
+    }
+
+    /**
+     * @return the number of localizations along the route
+     */
+    public int getLocalizations() {
+        return localizations;
+    }
+
+    /**
+     * @return the distance travelled in cm
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * @return the expected time in seconds to complete the route
+     */
+    public double getEstimatedTime() {
+        return estimatedTime;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (float[] wp : waypoints) {
+            sb.append('(').append(Math.round(wp[0])).append(',').append(Math.round(wp[1])).append(")->");
+        }
+        sb.append(finalHeading).append(" ").append(Math.round(estimatedTime)).append("s");
+        return sb.toString();
+    }
+}
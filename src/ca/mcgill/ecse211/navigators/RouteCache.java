@@ -0,0 +1,99 @@
+package ca.mcgill.ecse211.navigators;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * The routes of the mission, planned once at the start of the round, right
+ * after the parameters are received. Every trip then looks up its route
+ * instead of planning it again:
+ * <ul>
+ * <li>outbound: from anywhere in the starting zone to the tunnel</li>
+ * <li>return: from anywhere on the island to the tunnel</li>
+ * <li>dump: from anywhere on the island to the closest dumping point</li>
+ * <li>home: from the tunnel back to the starting corner, the reverse of the
+ * outbound route from the starting corner</li>
+ * </ul>
+ * 
+ * @author Julian Armour
+ * @since April 9, 2019
+ * @version 1
+ */
+public class RouteCache {
+    private RoutePlanner planner;
+    private RouteTable   outbound;
+    private RouteTable   inbound;
+    private RouteTable   dump;
+    private Route        outboundRoute;
+    private Route        home;
+
+    /**
+     * @param planner
+     *            the route planner
+     * @param startingCorner
+     *            the robot's pose {x, y, theta} after its initial localization
+     * @param dumpingPoints
+     *            the positions {x, y} in cm where cans can be dumped
+     */
+    public RouteCache(RoutePlanner planner, double[] startingCorner, List<float[]> dumpingPoints) {
+        this.planner = planner;
+        FieldMap map = planner.getMap();
+
+        List<int[]> goal = new LinkedList<int[]>();
+        goal.add(map.getTunnelApproachTile(true));
+        this.outbound = planner.planTable(goal, map.getTunnelHeading(true));
+
+        goal = new LinkedList<int[]>();
+        goal.add(map.getTunnelApproachTile(false));
+        this.inbound = planner.planTable(goal, map.getTunnelHeading(false));
+
+        List<int[]> dumpTiles = new LinkedList<int[]>();
+        for (float[] p : dumpingPoints) {
+            int[] tile = planner.nearestDrivableTile(p[0], p[1]);
+            if (map.isDrivable(tile[0], tile[1])) {
+                dumpTiles.add(tile);
+            }
+        }
+        this.dump = dumpTiles.isEmpty() ? null : planner.planTable(dumpTiles, -1);
+
+        this.outboundRoute = outbound.routeFrom(startingCorner);
+        if (outboundRoute != null && outboundRoute.getWaypoints().size() >= 2) {
+            this.home = planner.reverse(outboundRoute);
+        }
+    }
+
+    /**
+     * @param towardsIsland
+     *            true when going from the starting zone to the island
+     * @param pose
+     *            the robot's pose {x, y, theta}
+     * @return the route from the pose to the tile in front of the tunnel, or null
+     *         if the tunnel can't be reached
+     */
+    public Route toTunnel(boolean towardsIsland, double[] pose) {
+        return towardsIsland ? outbound.routeFrom(pose) : inbound.routeFrom(pose);
+    }
+
+    /**
+     * @param pose
+     *            the robot's pose {x, y, theta}
+     * @return the route from the pose to the closest dumping point's tile, or null
+     *         if there is none
+     */
+    public Route toDumpingPoint(double[] pose) {
+        return dump == null ? null : dump.routeFrom(pose);
+    }
+
+    /**
+     * @return the route from the tunnel in the starting zone back to the starting
+     *         corner's tile, or null if it couldn't be planned
+     */
+    public Route getHome() {
+        return home;
+    }
+
+    @Override
+    public String toString() {
+        return "out: " + outboundRoute + "\nhome: " + home;
+    }
+}
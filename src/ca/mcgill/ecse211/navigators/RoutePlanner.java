@@ -0,0 +1,369 @@
+package ca.mcgill.ecse211.navigators;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Plans the fastest route between two tiles of a {@link FieldMap} with A*. The
+ * robot drives between tile centres, so it stays half a tile away from the
+ * water and the walls. A state is a tile and one of the four headings, which
+ * lets the cost count the turns and the localization done after every turn as
+ * well as the distance.
+ * 
+ * @author Julian Armour
+ * @since April 8, 2019
+ * @version 1
+ */
+public class RoutePlanner {
+    // estimated durations in seconds
+    static final double         TILE_TIME           = 3.4;
+    static final double         TURN_TIME           = 2.0;
+    static final double         LOCALIZATION_TIME   = 4.5;
+    // driving through the search zone is slower since cans may be in the way
+    private static final double SEARCH_ZONE_PENALTY = 1.5;
+
+    private FieldMap            map;
+    private float               tileSize;
+
+    /**
+     * @param map
+     *            the map of the field
+     * @param tileSize
+     *            the size of a tile in cm
+     */
+    public RoutePlanner(FieldMap map, float tileSize) {
+        this.map = map;
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * @return the map used for planning
+     */
+    public FieldMap getMap() {
+        return map;
+    }
+
+    /**
+     * Plans a route from a pose to a tile.
+     * 
+     * @param start
+     *            the robot's pose {x, y, theta}
+     * @param goal
+     *            the tile {x, y} to go to
+     * @param goalHeading
+     *            the heading in degrees, a multiple of 90, to face at the end
+     * @return the fastest route, or null if the goal can't be reached
+     */
+    public Route plan(double[] start, int[] goal, int goalHeading) {
+        return plan(startTiles(start), startDir(start), goal, goalHeading / 90);
+    }
+
+    /**
+     * Computes the fastest route from every tile and heading to the closest of
+     * several goals at once, by searching backwards from the goals with Dijkstra's
+     * algorithm.
+     * 
+     * @param goals
+     *            the tiles {x, y} to go to
+     * @param goalHeading
+     *            the heading in degrees, a multiple of 90, to face at the end, or
+     *            -1 for any heading
+     * @return the table of routes to the goals
+     */
+    public RouteTable planTable(List<int[]> goals, int goalHeading) {
+        int h = FieldMap.FIELD_HEIGHT;
+        int n = FieldMap.FIELD_WIDTH * h * 4;
+        final double[] cost = new double[n];
+        int[] next = new int[n];
+        boolean[] closed = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            cost[i] = Double.MAX_VALUE;
+            next[i] = -1;
+        }
+        PriorityQueue<Integer> open = new PriorityQueue<Integer>(64, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(cost[a], cost[b]);
+            }
+        });
+        for (int[] goal : goals) {
+            for (int dir = 0; dir < 4; dir++) {
+                if (goalHeading < 0 || dir == goalHeading / 90) {
+                    int goalState = state(goal[0], goal[1], dir);
+                    cost[goalState] = 0;
+                    open.add(goalState);
+                }
+            }
+        }
+        while (!open.isEmpty()) {
+            int t = open.poll();
+            if (closed[t]) {
+                continue;
+            }
+            closed[t] = true;
+            int x = t / 4 / h;
+            int y = t / 4 % h;
+            int dir = t % 4;
+
+            // the state one tile behind, driving forward into this one
+            int px = x - FieldMap.DX[dir];
+            int py = y - FieldMap.DY[dir];
+            if (map.isDrivable(x, y) && map.isDrivable(px, py)) {
+                update(state(px, py, dir), t, cost[t] + tileCost(x, y), cost, next, closed, open);
+            }
+            // the states turning in place into this one
+            for (int turn = 1; turn <= 3; turn++) {
+                update(state(x, y, (dir + 4 - turn) % 4), t, cost[t] + turnCost(turn), cost, next, closed, open);
+            }
+        }
+        return new RouteTable(this, cost, next);
+    }
+
+    private static void update(int from, int to, double cost, double[] costs, int[] next, boolean[] closed,
+            PriorityQueue<Integer> open) {
+        if (closed[from] || cost >= costs[from]) {
+            return;
+        }
+        costs[from] = cost;
+        next[from] = to;
+        open.add(from);
+    }
+
+    /**
+     * @return the time to drive into tile (x, y)
+     */
+    private double tileCost(int x, int y) {
+        return map.getTile(x, y) == FieldMap.SEARCH_ZONE ? TILE_TIME * SEARCH_ZONE_PENALTY : TILE_TIME;
+    }
+
+    /**
+     * @return the time to turn in place by a number of quarter turns clockwise and
+     *         localize afterwards
+     */
+    private static double turnCost(int turn) {
+        return (turn == 3 ? 1 : turn) * TURN_TIME + LOCALIZATION_TIME;
+    }
+
+    /**
+     * Finds the tiles the route can start from. Any tile next to the robot can be
+     * the first one, e.g. when it is on an intersection.
+     */
+    List<int[]> startTiles(double[] start) {
+        LinkedList<int[]> startTiles = new LinkedList<int[]>();
+        int tx = (int) Math.floor(start[0] / tileSize);
+        int ty = (int) Math.floor(start[1] / tileSize);
+        for (int i = tx - 1; i <= tx + 1; i++) {
+            for (int j = ty - 1; j <= ty + 1; j++) {
+                float[] centre = tileCentre(i, j);
+                if (map.isDrivable(i, j)
+                        && Math.hypot(centre[0] - start[0], centre[1] - start[1]) < tileSize * 3 / 4) {
+                    startTiles.add(new int[] { i, j });
+                }
+            }
+        }
+        if (startTiles.isEmpty()) {
+            startTiles.add(nearestDrivableTile(start[0], start[1]));
+        }
+        return startTiles;
+    }
+
+    /**
+     * @return the direction, 0 to 3, closest to the heading of a pose
+     */
+    static int startDir(double[] start) {
+        return ((int) Math.round(start[2] / 90)) % 4;
+    }
+
+    /**
+     * A* search over the (tile, heading) states.
+     */
+    private Route plan(List<int[]> startTiles, int startDir, int[] goal, int goalDir) {
+        int w = FieldMap.FIELD_WIDTH;
+        int h = FieldMap.FIELD_HEIGHT;
+        int n = w * h * 4;
+        final double[] f = new double[n];
+        double[] g = new double[n];
+        int[] cameFrom = new int[n];
+        boolean[] closed = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            g[i] = Double.MAX_VALUE;
+            cameFrom[i] = -1;
+        }
+        PriorityQueue<Integer> open = new PriorityQueue<Integer>(64, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(f[a], f[b]);
+            }
+        });
+
+        for (int[] tile : startTiles) {
+            int startState = state(tile[0], tile[1], startDir);
+            g[startState] = 0;
+            f[startState] = heuristic(tile[0], tile[1], goal);
+            open.add(startState);
+        }
+        int goalState = state(goal[0], goal[1], goalDir);
+        while (!open.isEmpty()) {
+            int s = open.poll();
+            if (closed[s]) {
+                continue;
+            }
+            if (s == goalState) {
+                LinkedList<Integer> states = new LinkedList<Integer>();
+                for (int t = goalState; t != -1; t = cameFrom[t]) {
+                    states.addFirst(t);
+                }
+                return buildRoute(states, g[goalState]);
+            }
+            closed[s] = true;
+            int x = s / 4 / h;
+            int y = s / 4 % h;
+            int dir = s % 4;
+
+            // drive one tile forward
+            int nx = x + FieldMap.DX[dir];
+            int ny = y + FieldMap.DY[dir];
+            if (map.isDrivable(nx, ny)) {
+                relax(s, state(nx, ny, dir), g[s] + tileCost(nx, ny), heuristic(nx, ny, goal), g, f, cameFrom, closed,
+                        open);
+            }
+            // turn in place, then localize on the next line
+            for (int turn = 1; turn <= 3; turn++) {
+                relax(s, state(x, y, (dir + turn) % 4), g[s] + turnCost(turn), heuristic(x, y, goal), g, f, cameFrom,
+                        closed, open);
+            }
+        }
+        return null;
+    }
+
+    private static void relax(int from, int to, double cost, double heuristic, double[] g, double[] f,
+            int[] cameFrom, boolean[] closed, PriorityQueue<Integer> open) {
+        if (closed[to] || cost >= g[to]) {
+            return;
+        }
+        g[to] = cost;
+        f[to] = cost + heuristic;
+        cameFrom[to] = from;
+        open.add(to);
+    }
+
+    /**
+     * The time to drive straight to the goal, which never overestimates the cost.
+     */
+    private static double heuristic(int x, int y, int[] goal) {
+        return (Math.abs(goal[0] - x) + Math.abs(goal[1] - y)) * TILE_TIME;
+    }
+
+    static int state(int x, int y, int dir) {
+        return (x * FieldMap.FIELD_HEIGHT + y) * 4 + dir;
+    }
+
+    /**
+     * Turns a sequence of states into a route, keeping the tiles where the robot
+     * turns.
+     * 
+     * @param states
+     *            the states from the start to the goal
+     * @param cost
+     *            the cost of the states
+     */
+    Route buildRoute(List<Integer> states, double cost) {
+        int goalState = states.get(states.size() - 1);
+        int h = FieldMap.FIELD_HEIGHT;
+        LinkedList<float[]> waypoints = new LinkedList<float[]>();
+        int turns = 0;
+        int turnEvents = 0;
+        double distance = 0;
+        int prev = -1;
+        for (int s : states) {
+            int x = s / 4 / h;
+            int y = s / 4 % h;
+            if (prev == -1 || (prev / 4 == s / 4 && prev % 4 != s % 4)) {
+                // the start, or a turn in place
+                float[] centre = tileCentre(x, y);
+                float[] last = waypoints.peekLast();
+                if (last == null || last[0] != centre[0] || last[1] != centre[1]) {
+                    waypoints.add(centre);
+                }
+                if (prev != -1) {
+                    int quarters = Math.abs(prev % 4 - s % 4);
+                    turns += quarters == 3 ? 1 : quarters;
+                    turnEvents++;
+                }
+            } else {
+                distance += tileSize;
+            }
+            prev = s;
+        }
+        float[] end = tileCentre(goalState / 4 / h, goalState / 4 % h);
+        float[] last = waypoints.peekLast();
+        if (last[0] != end[0] || last[1] != end[1]) {
+            waypoints.add(end);
+        }
+        // every leg after the first waypoint starts with a localization, and there
+        // is one more at the end. The cost only counts the ones after a turn.
+        int finalHeading = (goalState % 4) * 90;
+        int localizations = waypoints.size();
+        return new Route(waypoints, localizations, finalHeading, turns, distance,
+                cost + (localizations - turnEvents) * LOCALIZATION_TIME);
+    }
+
+    /**
+     * Reverses a route, e.g. to come back the way the robot went. The reversed
+     * route ends facing the direction of its last leg.
+     * 
+     * @param route
+     *            a route with at least two waypoints
+     * @return the reversed route
+     */
+    public Route reverse(Route route) {
+        LinkedList<float[]> waypoints = new LinkedList<float[]>(route.getWaypoints());
+        Collections.reverse(waypoints);
+        float[] last = waypoints.getLast();
+        float[] beforeLast = waypoints.get(waypoints.size() - 2);
+        int finalHeading = (int) (Math.round(Math.toDegrees(
+                Math.atan2(last[0] - beforeLast[0], last[1] - beforeLast[1])) / 90) * 90 + 360) % 360;
+        return new Route(waypoints, waypoints.size(), finalHeading, route.getTurns(), route.getDistance(),
+                route.getEstimatedTime());
+    }
+
+    /**
+     * @return the position {x, y} in cm of the centre of tile (x, y)
+     */
+    public float[] tileCentre(int x, int y) {
+        return new float[] { (x + 0.5f) * tileSize, (y + 0.5f) * tileSize };
+    }
+
+    /**
+     * Finds the tile the robot is on. If the robot is on a grid line next to the
+     * water, the closest tile it can drive on is used instead.
+     * 
+     * @param x
+     *            the x position in cm
+     * @param y
+     *            the y position in cm
+     * @return the tile {x, y}
+     */
+    public int[] nearestDrivableTile(double x, double y) {
+        int tx = (int) Math.floor(x / tileSize);
+        int ty = (int) Math.floor(y / tileSize);
+        int[] best = { tx, ty };
+        double bestDist = Double.MAX_VALUE;
+        for (int i = tx - 1; i <= tx + 1; i++) {
+            for (int j = ty - 1; j <= ty + 1; j++) {
+                if (!map.isDrivable(i, j)) {
+                    continue;
+                }
+                double dist = Math.hypot((i + 0.5) * tileSize - x, (j + 0.5) * tileSize - y);
+                if (dist < bestDist) {
+                    bestDist = dist;
+                    best = new int[] { i, j };
+                }
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,57 @@
+package ca.mcgill.ecse211.navigators;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * The fastest routes from every tile and heading to a set of goals, computed
+ * once by {@link RoutePlanner#planTable(List, int)}. Looking up the route from
+ * a pose only follows the stored next states, without searching again.
+ * 
+ * @author Julian Armour
+ * @since April 9, 2019
+ * @version 1
+ */
+public class RouteTable {
+    private RoutePlanner planner;
+    // expected time to reach a goal from every state
+    private double[]     cost;
+    // the state that comes next on the route from every state
+    private int[]        next;
+
+    RouteTable(RoutePlanner planner, double[] cost, int[] next) {
+        this.planner = planner;
+        this.cost = cost;
+        this.next = next;
+    }
+
+    /**
+     * @param pose
+     *            the robot's pose {x, y, theta}
+     * @return the fastest route from the pose to a goal, or null if no goal can be
+     *         reached
+     */
+    public Route routeFrom(double[] pose) {
+        int start = bestStartState(pose);
+        if (start < 0) {
+            return null;
+        }
+        List<Integer> states = new LinkedList<Integer>();
+        for (int s = start; s != -1; s = next[s]) {
+            states.add(s);
+        }
+        return planner.buildRoute(states, cost[start]);
+    }
+
+    private int bestStartState(double[] pose) {
+        int dir = RoutePlanner.startDir(pose);
+        int best = -1;
+        for (int[] tile : planner.startTiles(pose)) {
+            int s = RoutePlanner.state(tile[0], tile[1], dir);
+            if (s >= 0 && s < cost.length && cost[s] < Double.MAX_VALUE && (best < 0 || cost[s] < cost[best])) {
+                best = s;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,117 @@
+package ca.mcgill.ecse211.navigators;
+
+/**
+ * A path sampled at a fixed spacing, with the heading, curvature and planned
+ * speed at every sample. Trajectories are created by the
+ * {@link TrajectoryPlanner}.
+ * <p>
+ * Curvature is positive when the robot turns clockwise. A non-zero turn at a
+ * sample means the robot has to stop and rotate in place by that angle before
+ * continuing.
+ * 
+ * @author Julian Armour
+ * @since April 6, 2019
+ * @version 1
+ */
+public class Trajectory {
+    private double[] x;
+    private double[] y;
+    private double[] heading;
+    private double[] curvature;
+    private double[] speed;
+    private double[] turn;
+    private int      size;
+    private double   spacing;
+
+    /**
+     * @param capacity
+     *            the maximum number of samples
+     * @param spacing
+     *            the distance in cm between two samples
+     */
+    Trajectory(int capacity, double spacing) {
+        this.x = new double[capacity];
+        this.y = new double[capacity];
+        this.heading = new double[capacity];
+        this.curvature = new double[capacity];
+        this.speed = new double[capacity];
+        this.turn = new double[capacity];
+        this.size = 0;
+        this.spacing = spacing;
+    }
+
+    /**
+     * Adds a sample at the end of the trajectory.
+     * 
+     * @return the index of the sample, or -1 if the trajectory is full
+     */
+    int add(double x, double y, double heading, double curvature) {
+        if (size == this.x.length) {
+            return -1;
+        }
+        this.x[size] = x;
+        this.y[size] = y;
+        this.heading[size] = heading;
+        this.curvature[size] = curvature;
+        return size++;
+    }
+
+    void setSpeed(int i, double speed) {
+        this.speed[i] = speed;
+    }
+
+    void setTurn(int i, double turn) {
+        this.turn[i] = turn;
+    }
+
+    /**
+     * @return the number of samples
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the distance in cm between two samples
+     */
+    public double getSpacing() {
+        return spacing;
+    }
+
+    public double getX(int i) {
+        return x[i];
+    }
+
+    public double getY(int i) {
+        return y[i];
+    }
+
+    /**
+     * @return the heading in degrees at sample i
+     */
+    public double getHeading(int i) {
+        return heading[i];
+    }
+
+    /**
+     * @return the curvature in 1/cm at sample i, positive for clockwise
+     */
+    public double getCurvature(int i) {
+        return curvature[i];
+    }
+
+    /**
+     * @return the planned speed in cm/s at sample i
+     */
+    public double getSpeed(int i) {
+        return speed[i];
+    }
+
+    /**
+     * @return the angle in degrees the robot rotates in place when it reaches
+     *         sample i, positive for clockwise
+     */
+    public double getTurn(int i) {
+        return turn[i];
+    }
+}
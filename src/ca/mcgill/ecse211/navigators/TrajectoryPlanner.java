@@ -0,0 +1,304 @@
+package ca.mcgill.ecse211.navigators;
+
+import java.util.List;
+
+/**
+ * Plans a continuous {@link Trajectory} through a list of waypoints. Corners
+ * are blended into circular arcs when there is room for them, otherwise the
+ * robot stops and rotates in place. The speed along the path follows a
+ * jerk-limited profile that respects the acceleration limit and slows down for
+ * arcs and in-place turns.
+ * 
+ * @author Julian Armour
+ * @since April 6, 2019
+ * @version 2
+ */
+public class TrajectoryPlanner {
+    // distance in cm between two trajectory samples
+    private static final double SPACING            = 0.5;
+    // corners turning less than this (deg) are driven straight through
+    private static final double MIN_CORNER_ANGLE   = 1;
+    // corners that can't fit an arc of at least this radius (cm) are turned in place
+    private static final double MIN_BLEND_RADIUS   = 4;
+    // index of the optional blend radius limit in a waypoint
+    public static final int     BLEND_RADIUS_INDEX = 2;
+    // time step (s) of the simulated motion the speeds are planned with
+    private static final double TIME_STEP          = 0.01;
+
+    private double              maxSpeed;
+    private double              maxAcceleration;
+    private double              maxJerk;
+    private double              maxBlendRadius;
+    private double              track;
+
+    /**
+     * @param maxSpeed
+     *            the maximum speed of a wheel in cm/s
+     * @param maxAcceleration
+     *            the maximum acceleration in cm/s^2
+     * @param maxJerk
+     *            the maximum jerk in cm/s^3
+     * @param maxBlendRadius
+     *            the largest arc radius in cm used to blend a corner
+     * @param track
+     *            the distance between the wheels in cm
+     */
+    public TrajectoryPlanner(
+            double maxSpeed, double maxAcceleration, double maxJerk, double maxBlendRadius, double track
+    ) {
+        this.maxSpeed = maxSpeed;
+        this.maxAcceleration = maxAcceleration;
+        this.maxJerk = maxJerk;
+        this.maxBlendRadius = maxBlendRadius;
+        this.track = track;
+    }
+
+    /**
+     * Plans a trajectory from a pose through all the waypoints.
+     * 
+     * @param start
+     *            the robot's pose {x, y, theta}
+     * @param waypoints
+     *            the positions {x, y} to go through. A waypoint can have a third
+     *            element, the largest blend radius allowed at that corner (e.g. 0
+     *            near an obstacle).
+     * @return the planned trajectory, ending with a speed of 0 at the last
+     *         waypoint
+     */
+    public Trajectory plan(double[] start, List<float[]> waypoints) {
+        int n = waypoints.size() + 1;
+        double[] px = new double[n];
+        double[] py = new double[n];
+        double[] radiusLimit = new double[n];
+        px[0] = start[0];
+        py[0] = start[1];
+        double pathLength = 0;
+        for (int i = 1; i < n; i++) {
+            float[] wp = waypoints.get(i - 1);
+            px[i] = wp[0];
+            py[i] = wp[1];
+            radiusLimit[i] = wp.length > BLEND_RADIUS_INDEX ? Math.min(wp[BLEND_RADIUS_INDEX], maxBlendRadius)
+                    : maxBlendRadius;
+            pathLength += Math.hypot(px[i] - px[i - 1], py[i] - py[i - 1]);
+        }
+
+        // headings of the legs and the corner geometry
+        double[] legHeading = new double[n];
+        double[] legLength = new double[n];
+        for (int i = 1; i < n; i++) {
+            legHeading[i] = (Math.toDegrees(Math.atan2(px[i] - px[i - 1], py[i] - py[i - 1])) + 360) % 360;
+            legLength[i] = Math.hypot(px[i] - px[i - 1], py[i] - py[i - 1]);
+        }
+        double[] cornerAngle = new double[n];
+        double[] cornerRadius = new double[n];
+        double[] tangentLength = new double[n + 1];
+        for (int i = 1; i < n - 1; i++) {
+            cornerAngle[i] = angleDifference(legHeading[i], legHeading[i + 1]);
+            double halfAngle = Math.toRadians(Math.abs(cornerAngle[i]) / 2);
+            if (Math.abs(cornerAngle[i]) < MIN_CORNER_ANGLE) {
+                continue;
+            }
+            // the arc can't use more than half of each neighbouring leg
+            double maxTangent = Math.min(legLength[i], legLength[i + 1]) / 2;
+            double radius = Math.min(radiusLimit[i], maxTangent / Math.tan(halfAngle));
+            if (radius >= MIN_BLEND_RADIUS && Math.abs(cornerAngle[i]) < 179) {
+                cornerRadius[i] = radius;
+                tangentLength[i] = radius * Math.tan(halfAngle);
+            }
+        }
+
+        Trajectory trajectory = new Trajectory((int) (pathLength / SPACING) + 2 * n + 2, SPACING);
+        // turn in place towards the first leg
+        if (n > 1) {
+            int first = trajectory.add(px[0], py[0], legHeading[1], 0);
+            trajectory.setTurn(first, angleDifference(start[2], legHeading[1]));
+        }
+        double carry = 0;
+        for (int i = 1; i < n; i++) {
+            // straight part of the leg, between the previous corner's arc and this
+            // corner's arc
+            double sx = px[i - 1] + tangentLength[i - 1] * Math.sin(Math.toRadians(legHeading[i]));
+            double sy = py[i - 1] + tangentLength[i - 1] * Math.cos(Math.toRadians(legHeading[i]));
+            double lineLength = legLength[i] - tangentLength[i - 1] - tangentLength[i];
+            carry = addLine(trajectory, sx, sy, legHeading[i], lineLength, carry);
+            if (i == n - 1) {
+                break;
+            }
+            if (cornerRadius[i] > 0) {
+                double ex = px[i] - tangentLength[i] * Math.sin(Math.toRadians(legHeading[i]));
+                double ey = py[i] - tangentLength[i] * Math.cos(Math.toRadians(legHeading[i]));
+                carry = addArc(trajectory, ex, ey, legHeading[i], cornerRadius[i], cornerAngle[i], carry);
+            } else if (Math.abs(cornerAngle[i]) >= MIN_CORNER_ANGLE) {
+                // no room for an arc, stop at the corner and turn in place
+                int corner = trajectory.add(px[i], py[i], legHeading[i + 1], 0);
+                if (corner >= 0) {
+                    trajectory.setTurn(corner, cornerAngle[i]);
+                }
+                carry = 0;
+            }
+        }
+        // make sure the last sample is exactly on the last waypoint
+        if (carry > 0 && n > 1) {
+            trajectory.add(px[n - 1], py[n - 1], legHeading[n - 1], 0);
+        }
+
+        planSpeeds(trajectory);
+        return trajectory;
+    }
+
+    /**
+     * Samples a straight line.
+     * 
+     * @return the distance between the last sample and the end of the line
+     */
+    private double addLine(Trajectory trajectory, double x0, double y0, double heading, double length,
+            double carry) {
+        double h = Math.toRadians(heading);
+        double u = trajectory.size() == 0 ? 0 : SPACING - carry;
+        while (u <= length) {
+            trajectory.add(x0 + u * Math.sin(h), y0 + u * Math.cos(h), heading, 0);
+            u += SPACING;
+        }
+        return length - (u - SPACING);
+    }
+
+    /**
+     * Samples an arc starting at (x0, y0) with heading h0 and turning by angle
+     * degrees.
+     * 
+     * @return the distance between the last sample and the end of the arc
+     */
+    private double addArc(Trajectory trajectory, double x0, double y0, double h0, double radius, double angle,
+            double carry) {
+        double k = Math.signum(angle) / radius;
+        double length = Math.toRadians(Math.abs(angle)) * radius;
+        double h = Math.toRadians(h0);
+        double u = SPACING - carry;
+        while (u <= length) {
+            double hu = h + k * u;
+            double x = x0 + (Math.cos(h) - Math.cos(hu)) / k;
+            double y = y0 + (Math.sin(hu) - Math.sin(h)) / k;
+            trajectory.add(x, y, (Math.toDegrees(hu) + 360) % 360, k);
+            u += SPACING;
+        }
+        return length - (u - SPACING);
+    }
+
+    /**
+     * Sets the speed of every sample. The motion is simulated in small time steps
+     * in which the acceleration changes by at most maxJerk: it is increased as
+     * long as the robot could still slow down in time for every speed limit
+     * ahead, and otherwise held or decreased. The robot so ramps the
+     * acceleration down before reaching a cruise speed, and ramps the
+     * deceleration up and back down before an arc or a stop.
+     */
+    private void planSpeeds(Trajectory trajectory) {
+        int size = trajectory.size();
+        if (size == 0) {
+            return;
+        }
+        double[] limit = new double[size];
+        for (int i = 0; i < size; i++) {
+            // the outer wheel must not go faster than maxSpeed on an arc
+            limit[i] = maxSpeed / (1 + Math.abs(trajectory.getCurvature(i)) * track / 2);
+            if (trajectory.getTurn(i) != 0) {
+                limit[i] = 0;
+                if (i > 0) {
+                    limit[i - 1] = 0;
+                }
+            }
+        }
+        limit[0] = 0;
+        limit[size - 1] = 0;
+
+        // the distance along the path, speed and acceleration
+        double s = 0;
+        double v = 0;
+        double a = 0;
+        double[] next = new double[3];
+        trajectory.setSpeed(0, 0);
+        int i = 1;
+        while (i < size) {
+            boolean found = false;
+            for (int sign = 1; sign >= -1 && !found; sign--) {
+                advance(s, v, a, sign * maxJerk, next);
+                found = next[1] > 0 && canSlowDown(limit, next[0], next[1], next[2]);
+            }
+            if (!found && v <= 0) {
+                // stopped just short of a stop, the robot is at the stop
+                while (limit[i] > 0) {
+                    trajectory.setSpeed(i++, 0);
+                }
+                trajectory.setSpeed(i, 0);
+                s = i * SPACING;
+                a = 0;
+                i++;
+                continue;
+            }
+            if (!found) {
+                // the time step is too coarse to follow the limit exactly
+                advance(s, v, a, -maxJerk, next);
+            }
+            while (i < size && next[0] >= i * SPACING) {
+                double f = (i * SPACING - s) / (next[0] - s);
+                trajectory.setSpeed(i, Math.min(limit[i], v + f * (next[1] - v)));
+                i++;
+            }
+            s = next[0];
+            v = next[1];
+            a = next[2];
+        }
+    }
+
+    /**
+     * Brakes as fast as the acceleration and jerk limits allow, ending with no
+     * acceleration when stopped.
+     * 
+     * @return true if the speed stays under the limit of every sample ahead
+     */
+    private boolean canSlowDown(double[] limit, double s, double v, double a) {
+        double[] next = new double[3];
+        while (true) {
+            int k = (int) Math.ceil(s / SPACING - 1e-9);
+            if (k >= limit.length) {
+                return true;
+            }
+            if (v > limit[k] + 1e-9) {
+                return false;
+            }
+            if (v <= 0) {
+                return true;
+            }
+            // ramp the deceleration back down when that alone brings the speed to 0
+            double jerk = a < 0 && v <= a * a / (2 * maxJerk) ? maxJerk : -maxJerk;
+            advance(s, v, a, jerk, next);
+            s = next[0];
+            v = next[1];
+            a = next[2];
+        }
+    }
+
+    /**
+     * Moves one time step forward with a constant jerk, or a constant
+     * acceleration once the acceleration reached its limit.
+     * 
+     * @param next
+     *            filled with the distance, speed and acceleration after the step
+     */
+    private void advance(double s, double v, double a, double jerk, double[] next) {
+        double nextA = Math.max(-maxAcceleration, Math.min(maxAcceleration, a + jerk * TIME_STEP));
+        double nextV = Math.max(0, v + (a + nextA) / 2 * TIME_STEP);
+        next[0] = s + (v + nextV) / 2 * TIME_STEP;
+        next[1] = nextV;
+        next[2] = nextA;
+    }
+
+    /**
+     * @return the signed smallest angle in degrees to turn from heading "from" to
+     *         heading "to", positive for clockwise
+     */
+    public static double angleDifference(double from, double to) {
+        double d = ((to - from) % 360 + 360) % 360;
+        return d > 180 ? d - 360 : d;
+    }
+}
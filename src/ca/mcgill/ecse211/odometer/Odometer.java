@@ -30,8 +30,10 @@ public class Odometer extends OdometerData implements Runnable {
 
     private double[]               position;
 
+    private OdometerListener       listener;
+
     // odometer update period in ms
-    private static final long      ODOMETER_PERIOD = 25;
+    public static final long       ODOMETER_PERIOD = 25;
 
     /**
      * This is the default constructor of this class. It initiates all motors and
@@ -105,6 +107,16 @@ public class Odometer extends OdometerData implements Runnable {
         this.track = track;
     }
 
+    /**
+     * Sets the listener notified of every step of the odometer.
+     * 
+     * @param listener
+     *            the {@link OdometerListener}, or <code>null</code> for none
+     */
+    public void setListener(OdometerListener listener) {
+        this.listener = listener;
+    }
+
     /**
      * This method is where the logic for the odometer will run. Use the methods
      * provided from the OdometerData class to implement the odometer.
@@ -156,6 +168,10 @@ public class Odometer extends OdometerData implements Runnable {
             position[1] += dY; // position [1] is y-position
 
             odo.update(dX, dY, deltaT);
+            OdometerListener stepListener = listener;
+            if (stepListener != null) {
+                stepListener.odometerStepped(deltaD, deltaT, position[2]);
+            }
 
             // this ensures that the odometer only runs once every period
             updateEnd = System.currentTimeMillis();
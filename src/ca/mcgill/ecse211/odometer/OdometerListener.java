@@ -0,0 +1,24 @@
+package ca.mcgill.ecse211.odometer;
+
+/**
+ * Receives every step of the {@link Odometer}, for estimates that must follow
+ * the path the robot actually took.
+ * 
+ * @author Julian Armour
+ * @since April 13, 2019
+ * @version 1
+ */
+public interface OdometerListener {
+
+    /**
+     * Called from the odometer's thread after every update.
+     * 
+     * @param distance
+     *            the distance in cm driven during the step, negative backward
+     * @param angle
+     *            the angle in degrees turned during the step, positive clockwise
+     * @param heading
+     *            the heading in degrees at the end of the step
+     */
+    public void odometerStepped(double distance, double angle, double heading);
+}
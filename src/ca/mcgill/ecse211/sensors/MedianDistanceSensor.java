@@ -12,10 +12,14 @@ import lejos.robotics.SampleProvider;
  * 
  * @author Julian Armour, Alice Kazarine
  * @since 2019-02-01
- * @version 2
+ * @version 3
  */
 public class MedianDistanceSensor {
+    // the sensor doesn't measure a new distance faster than this (ms)
+    private static final long SAMPLE_PERIOD = 30;
+
     private float[]        pastData;
+    private long[]         pastTimes;
     private float          median;
     private SampleProvider usSampler;
     private float[]        USData;
@@ -33,6 +37,7 @@ public class MedianDistanceSensor {
      */
     public MedianDistanceSensor(SampleProvider USSampleProvider, float[] USSample, Odometer odometer, int size) {
         this.pastData = new float[size];
+        this.pastTimes = new long[size];
         this.median = 255;
         this.usSampler = USSampleProvider;
         this.USData = USSample;
@@ -61,9 +66,11 @@ public class MedianDistanceSensor {
         // shift the past data to the left in the array
         for (int i = 0; i < pastData.length - 1; i++) {
             pastData[i] = pastData[i + 1];
+            pastTimes[i] = pastTimes[i + 1];
         }
         // add the sample to end of pastData
         pastData[pastData.length - 1] = (USData[0] * 100);
+        pastTimes[pastTimes.length - 1] = System.currentTimeMillis();
         // calculate the median
         median = calculateMedian(pastData.clone());
     }
@@ -78,6 +85,43 @@ public class MedianDistanceSensor {
         return Math.min(median, 255);
     }
 
+    /**
+     * @return the time in ms the latest sample was taken
+     * 
+     * @author Julian Armour
+     * @since April 13, 2019
+     */
+    public long getSampleTime() {
+        return pastTimes[pastTimes.length - 1];
+    }
+
+    /**
+     * Gets the filtered distance once every sample in the median's window was
+     * taken after a time, like when the robot stopped. Unlike {@link #flush()},
+     * this only waits as long as the sensor needs to measure the samples that
+     * are too old.
+     * 
+     * @param time
+     *            the time in ms after which the samples must be taken
+     * @return the filtered distance of the fresh samples
+     * 
+     * @author Julian Armour
+     * @since April 13, 2019
+     */
+    public float getFreshDistance(long time) {
+        while (pastTimes[0] < time) {
+            fetchAndFilter();
+            if (pastTimes[0] < time) {
+                try {
+                    Thread.sleep(SAMPLE_PERIOD);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return Math.min(median, 255);
+    }
+
     /**
      * Finds the median in a list
      * 
@@ -0,0 +1,64 @@
+package ca.mcgill.ecse211.strategies;
+
+/**
+ * A can found by the {@link CanClusterer}: the centroid of a cluster of
+ * ultrasonic points and how confident it is that there is really a can there.
+ * 
+ * @author Julian Armour
+ * @since April 13, 2019
+ * @version 1
+ */
+public class CanCandidate {
+    private float x;
+    private float y;
+    private int   points;
+    private float confidence;
+
+    CanCandidate(float x, float y, int points, float confidence) {
+        this.x = x;
+        this.y = y;
+        this.points = points;
+        this.confidence = confidence;
+    }
+
+    /**
+     * @return the x position in cm of the can's centre
+     */
+    public float getX() {
+        return x;
+    }
+
+    /**
+     * @return the y position in cm of the can's centre
+     */
+    public float getY() {
+        return y;
+    }
+
+    /**
+     * @return the position {x, y} in cm of the can's centre
+     */
+    public float[] getPosition() {
+        return new float[] { x, y };
+    }
+
+    /**
+     * @return the number of points in the cluster
+     */
+    public int getPoints() {
+        return points;
+    }
+
+    /**
+     * @return the confidence in [0, 1] that this is a can, grows with the number
+     *         of points
+     */
+    public float getConfidence() {
+        return confidence;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("can (%.1f, %.1f) %d points %.2f", x, y, points, confidence);
+    }
+}
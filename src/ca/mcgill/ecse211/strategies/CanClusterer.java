@@ -0,0 +1,184 @@
+package ca.mcgill.ecse211.strategies;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Groups the points of a {@link PointCloud} into cans with DBSCAN. Points that
+ * have enough neighbours closer than a radius are the core of a cluster, and a
+ * cluster grows through the neighbours of its core points. Points with too few
+ * neighbours are noise, like a single bad echo.
+ * <p>
+ * The neighbours are found with a grid over the field whose cells are the size
+ * of the radius, so only the 9 cells around a point are searched. The grid and
+ * the working arrays are allocated once.
+ * 
+ * @author Julian Armour
+ * @since April 13, 2019
+ * @version 1
+ */
+public class CanClusterer {
+    private static final int UNVISITED = -1;
+    private static final int NOISE     = 0;
+
+    private double radius;
+    private int    minPoints;
+    private int    fullConfidencePoints;
+    private int    columns;
+    private int    rows;
+    // first point of every cell and the next point in the same cell, -1 ends them
+    private int[]  cellHead;
+    private int[]  nextInCell;
+    private int[]  cellOf;
+    private int[]  labels;
+    private int[]  queue;
+
+    /**
+     * @param radius
+     *            the distance in cm under which two points are neighbours
+     * @param minPoints
+     *            the number of neighbours, counting the point itself, a point
+     *            needs to be the core of a cluster
+     * @param fullConfidencePoints
+     *            the number of points a cluster needs to be fully trusted
+     * @param fieldWidth
+     *            the width of the field in cm
+     * @param fieldHeight
+     *            the height of the field in cm
+     * @param capacity
+     *            the most points clustered at once
+     */
+    public CanClusterer(double radius, int minPoints, int fullConfidencePoints, double fieldWidth,
+            double fieldHeight, int capacity) {
+        this.radius = radius;
+        this.minPoints = minPoints;
+        this.fullConfidencePoints = fullConfidencePoints;
+        this.columns = (int) Math.ceil(fieldWidth / radius) + 1;
+        this.rows = (int) Math.ceil(fieldHeight / radius) + 1;
+        this.cellHead = new int[columns * rows];
+        this.nextInCell = new int[capacity];
+        this.cellOf = new int[capacity];
+        this.labels = new int[capacity];
+        this.queue = new int[capacity];
+    }
+
+    /**
+     * Clusters the points of the last projection of a cloud.
+     * 
+     * @param cloud
+     *            the points to cluster
+     * @return the centroid of every cluster, the most confident first
+     */
+    public List<CanCandidate> cluster(PointCloud cloud) {
+        int n = Math.min(cloud.pointCount(), labels.length);
+        for (int c = 0; c < cellHead.length; c++) {
+            cellHead[c] = -1;
+        }
+        for (int i = 0; i < n; i++) {
+            int column = clamp((int) (cloud.getX(i) / radius), columns);
+            int row = clamp((int) (cloud.getY(i) / radius), rows);
+            cellOf[i] = row * columns + column;
+            nextInCell[i] = cellHead[cellOf[i]];
+            cellHead[cellOf[i]] = i;
+            labels[i] = UNVISITED;
+        }
+
+        List<CanCandidate> candidates = new ArrayList<CanCandidate>();
+        int clusters = 0;
+        for (int i = 0; i < n; i++) {
+            if (labels[i] != UNVISITED) {
+                continue;
+            }
+            if (countNeighbours(cloud, i) < minPoints) {
+                labels[i] = NOISE;
+                continue;
+            }
+            // grow a new cluster from this core point
+            int cluster = ++clusters;
+            labels[i] = cluster;
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = i;
+            double sumX = 0;
+            double sumY = 0;
+            int size = 0;
+            while (head < tail) {
+                int p = queue[head++];
+                sumX += cloud.getX(p);
+                sumY += cloud.getY(p);
+                size++;
+                if (countNeighbours(cloud, p) < minPoints) {
+                    // a border point joins the cluster but doesn't grow it
+                    continue;
+                }
+                tail = enqueueNeighbours(cloud, p, cluster, tail);
+            }
+            float confidence = Math.min(1f, (float) size / fullConfidencePoints);
+            candidates.add(new CanCandidate((float) (sumX / size), (float) (sumY / size), size, confidence));
+        }
+
+        // most confident first
+        for (int i = 1; i < candidates.size(); i++) {
+            CanCandidate candidate = candidates.get(i);
+            int j = i - 1;
+            while (j >= 0 && candidates.get(j).getConfidence() < candidate.getConfidence()) {
+                candidates.set(j + 1, candidates.get(j));
+                j--;
+            }
+            candidates.set(j + 1, candidate);
+        }
+        return candidates;
+    }
+
+    /**
+     * @return the number of points closer than the radius to a point, counting
+     *         itself
+     */
+    private int countNeighbours(PointCloud cloud, int p) {
+        int count = 0;
+        int column = cellOf[p] % columns;
+        int row = cellOf[p] / columns;
+        for (int r = Math.max(row - 1, 0); r <= Math.min(row + 1, rows - 1); r++) {
+            for (int c = Math.max(column - 1, 0); c <= Math.min(column + 1, columns - 1); c++) {
+                for (int q = cellHead[r * columns + c]; q != -1; q = nextInCell[q]) {
+                    if (isNeighbour(cloud, p, q)) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Labels the unlabelled and noise neighbours of a point with a cluster and
+     * adds them to the queue.
+     * 
+     * @return the new end of the queue
+     */
+    private int enqueueNeighbours(PointCloud cloud, int p, int cluster, int tail) {
+        int column = cellOf[p] % columns;
+        int row = cellOf[p] / columns;
+        for (int r = Math.max(row - 1, 0); r <= Math.min(row + 1, rows - 1); r++) {
+            for (int c = Math.max(column - 1, 0); c <= Math.min(column + 1, columns - 1); c++) {
+                for (int q = cellHead[r * columns + c]; q != -1; q = nextInCell[q]) {
+                    if ((labels[q] == UNVISITED || labels[q] == NOISE) && isNeighbour(cloud, p, q)) {
+                        labels[q] = cluster;
+                        queue[tail++] = q;
+                    }
+                }
+            }
+        }
+        return tail;
+    }
+
+    private boolean isNeighbour(PointCloud cloud, int p, int q) {
+        double dx = cloud.getX(p) - cloud.getX(q);
+        double dy = cloud.getY(p) - cloud.getY(q);
+        return dx * dx + dy * dy <= radius * radius;
+    }
+
+    private static int clamp(int cell, int cells) {
+        return Math.max(0, Math.min(cells - 1, cell));
+    }
+}
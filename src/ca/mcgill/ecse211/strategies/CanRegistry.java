@@ -0,0 +1,276 @@
+package ca.mcgill.ecse211.strategies;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.mcgill.ecse211.Main;
+import ca.mcgill.ecse211.detectors.CanColour;
+
+/**
+ * What the robot knows about the search zone, kept between scan points and
+ * between trips home: the cans it has seen, and an occupancy grid of the space
+ * the ultrasonic sensor has already seen to be empty. Cans seen from several
+ * scan points are merged into one {@link KnownCan}.
+ * 
+ * @author Julian Armour
+ * @since April 13, 2019
+ * @version 2
+ */
+public class CanRegistry {
+    // sightings closer than this (cm) are the same can
+    private static final double MERGE_RADIUS        = 10;
+    // a scan point is worth visiting if this much of the zone it covers wasn't searched
+    private static final double UNSEARCHED_FRACTION = 0.2;
+    // the space this close (cm) to a forgotten can is searched again
+    private static final double FORGET_RADIUS       = Main.TILE_SIZE;
+    // once more cans than this were forgotten at a spot, it may be one the robot can't
+    // grab, and what is seen there is ignored
+    private static final int    MAX_FORGOTTEN       = 2;
+
+    private float[]             zoneLL;
+    private float[]             zoneUR;
+    private double              cellSize;
+    private int                 columns;
+    private int                 rows;
+    private boolean[][]         searched;
+    private List<KnownCan>      cans;
+    private List<float[]>       ignored;
+
+    /**
+     * @param zoneLL
+     *            the lower left {x, y} in cm of the search zone
+     * @param zoneUR
+     *            the upper right {x, y} in cm of the search zone
+     * @param cellSize
+     *            the size in cm of the occupancy grid's cells
+     */
+    public CanRegistry(float[] zoneLL, float[] zoneUR, double cellSize) {
+        this.zoneLL = zoneLL;
+        this.zoneUR = zoneUR;
+        this.cellSize = cellSize;
+        this.columns = Math.max(1, (int) Math.ceil((zoneUR[0] - zoneLL[0]) / cellSize));
+        this.rows = Math.max(1, (int) Math.ceil((zoneUR[1] - zoneLL[1]) / cellSize));
+        this.searched = new boolean[columns][rows];
+        this.cans = new ArrayList<KnownCan>();
+        this.ignored = new ArrayList<float[]>();
+    }
+
+    /**
+     * Adds the cans found by a scan, merging them with the known cans they are
+     * close to. Cans seen where too many were forgotten are ignored, see
+     * {@link #forget(KnownCan)}.
+     * 
+     * @param candidates
+     *            the cans found, see {@link CanClusterer#cluster(PointCloud)}
+     * @return the cans that weren't ignored
+     */
+    public List<CanCandidate> observe(List<CanCandidate> candidates) {
+        List<CanCandidate> kept = new ArrayList<CanCandidate>();
+        for (CanCandidate candidate : candidates) {
+            if (isIgnored(candidate.getX(), candidate.getY())) {
+                continue;
+            }
+            kept.add(candidate);
+            KnownCan known = nearest(candidate.getX(), candidate.getY(), MERGE_RADIUS);
+            if (known == null) {
+                cans.add(new KnownCan(candidate.getX(), candidate.getY()));
+            } else {
+                known.observe(candidate.getX(), candidate.getY());
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Marks the space seen by a scan as searched. Every sample's ray is followed
+     * from the robot up to the distance measured or the maximum range, whichever
+     * is closer, so the space hidden behind a can stays unsearched.
+     * 
+     * @param cloud
+     *            the samples of the scan
+     * @param lag
+     *            how late, in ms, the distances are compared to the poses, see
+     *            {@link PointCloud#project(long, double, float[], float[], float)}
+     * @param maxRange
+     *            the distance in cm up to which the sensor is trusted to see a can
+     */
+    public void markSearched(PointCloud cloud, long lag, double maxRange) {
+        double[] pose = new double[3];
+        for (int i = 0; i < cloud.sampleCount(); i++) {
+            if (!cloud.poseAt(i, lag, pose)) {
+                continue;
+            }
+            double range = Math.min(cloud.getDistance(i), maxRange);
+            double sin = Math.sin(Math.toRadians(pose[2]));
+            double cos = Math.cos(Math.toRadians(pose[2]));
+            for (double d = 0; d <= range; d += cellSize / 2) {
+                int column = column(pose[0] + d * sin);
+                int row = row(pose[1] + d * cos);
+                if (column >= 0 && column < columns && row >= 0 && row < rows) {
+                    searched[column][row] = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param x
+     *            the x position in cm of a scan point
+     * @param y
+     *            the y position in cm of a scan point
+     * @param radius
+     *            the distance in cm the robot scans up to
+     * @return true if enough of the search zone around the point hasn't been
+     *         searched yet
+     */
+    public boolean needsScan(double x, double y, double radius) {
+        int cells = 0;
+        int unsearched = 0;
+        for (int column = 0; column < columns; column++) {
+            for (int row = 0; row < rows; row++) {
+                double cx = zoneLL[0] + (column + 0.5) * cellSize;
+                double cy = zoneLL[1] + (row + 0.5) * cellSize;
+                if (Math.hypot(cx - x, cy - y) <= radius) {
+                    cells++;
+                    if (!searched[column][row]) {
+                        unsearched++;
+                    }
+                }
+            }
+        }
+        return cells > 0 && unsearched >= UNSEARCHED_FRACTION * cells;
+    }
+
+    /**
+     * @return the fraction of the search zone that was searched
+     */
+    public double searchedFraction() {
+        int count = 0;
+        for (int column = 0; column < columns; column++) {
+            for (int row = 0; row < rows; row++) {
+                if (searched[column][row]) {
+                    count++;
+                }
+            }
+        }
+        return (double) count / (columns * rows);
+    }
+
+    /**
+     * @param x
+     *            the robot's x position in cm
+     * @param y
+     *            the robot's y position in cm
+     * @return the closest can still in the search zone, or <code>null</code> if
+     *         there is none
+     */
+    public KnownCan nearestCan(double x, double y) {
+        return nearest(x, y, Double.MAX_VALUE);
+    }
+
+    /**
+     * Records what a can turned out to be. The can is then taken out of the
+     * search zone, either home or to a dumping point.
+     * 
+     * @param can
+     *            the can the robot grabbed
+     * @param colour
+     *            the can's colour
+     * @param heavy
+     *            true if the can is heavy
+     */
+    public void identified(KnownCan can, CanColour colour, boolean heavy) {
+        can.identify(colour, heavy);
+        can.remove();
+    }
+
+    /**
+     * Forgets a can that wasn't found where it was expected, or that couldn't be
+     * grabbed and may have been pushed somewhere else. The space around it is
+     * marked as unsearched, so a later scan looks for it there again. Once cans
+     * were forgotten there too many times, the spot is ignored instead, so the
+     * robot stops going back to a can it can't grab.
+     * 
+     * @param can
+     *            the can to forget
+     */
+    public void forget(KnownCan can) {
+        can.remove();
+        float[] position = can.getPosition();
+        int forgotten = 0;
+        for (KnownCan other : cans) {
+            float[] otherPosition = other.getPosition();
+            if (other.isRemoved() && !other.isIdentified()
+                    && Math.hypot(otherPosition[0] - position[0], otherPosition[1] - position[1]) <= MERGE_RADIUS) {
+                forgotten++;
+            }
+        }
+        if (forgotten > MAX_FORGOTTEN) {
+            ignored.add(position);
+            return;
+        }
+        for (int column = 0; column < columns; column++) {
+            for (int row = 0; row < rows; row++) {
+                double cx = zoneLL[0] + (column + 0.5) * cellSize;
+                double cy = zoneLL[1] + (row + 0.5) * cellSize;
+                if (Math.hypot(cx - position[0], cy - position[1]) <= FORGET_RADIUS) {
+                    searched[column][row] = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the cans still in the search zone
+     */
+    public List<KnownCan> getRemainingCans() {
+        List<KnownCan> remaining = new ArrayList<KnownCan>();
+        for (KnownCan can : cans) {
+            if (!can.isRemoved()) {
+                remaining.add(can);
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * @return all the cans seen, including the ones removed
+     */
+    public List<KnownCan> getCans() {
+        return cans;
+    }
+
+    private KnownCan nearest(double x, double y, double maxDistance) {
+        KnownCan nearest = null;
+        double nearestDistance = maxDistance;
+        for (KnownCan can : cans) {
+            if (can.isRemoved()) {
+                continue;
+            }
+            float[] position = can.getPosition();
+            double distance = Math.hypot(position[0] - x, position[1] - y);
+            if (distance <= nearestDistance) {
+                nearest = can;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    private boolean isIgnored(double x, double y) {
+        for (float[] spot : ignored) {
+            if (Math.hypot(spot[0] - x, spot[1] - y) <= MERGE_RADIUS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int column(double x) {
+        return (int) Math.floor((x - zoneLL[0]) / cellSize);
+    }
+
+    private int row(double y) {
+        return (int) Math.floor((y - zoneLL[1]) / cellSize);
+    }
+}
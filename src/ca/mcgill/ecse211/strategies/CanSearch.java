@@ -1,5 +1,6 @@
 package ca.mcgill.ecse211.strategies;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -9,6 +10,10 @@ import ca.mcgill.ecse211.detectors.CanColour;
 import ca.mcgill.ecse211.detectors.ColourDetector;
 import ca.mcgill.ecse211.detectors.WeightDetector;
 import ca.mcgill.ecse211.localizers.Localization;
+import ca.mcgill.ecse211.navigators.FieldMap;
+import ca.mcgill.ecse211.navigators.MotionCommand;
+import ca.mcgill.ecse211.navigators.MotionExecutor;
+import ca.mcgill.ecse211.navigators.MotionFuture;
 import ca.mcgill.ecse211.navigators.MovementController;
 import ca.mcgill.ecse211.navigators.Navigator;
 import ca.mcgill.ecse211.odometer.Odometer;
@@ -21,11 +26,72 @@ import lejos.utility.Delay;
  * 
  * @author Julian Armour, Alice Kazarine
  * @since March 5, 2019
- * @version 2
+ * @version 6
  */
 public class CanSearch {
 
-    private static final long    CAN_SCAN_PERIOD = 30;
+    private static final long    CAN_SCAN_PERIOD   = 30;
+    // how many times the robot tries to grab a can before giving up on it
+    private static final int     MAX_GRAB_ATTEMPTS = 3;
+    // a can held shallower than this in the jaws may slip out, see Claw#getCanDepth()
+    private static final float   MIN_CAN_DEPTH     = 0.2f;
+    // how far the robot backs up from a can before trying to grab it again
+    private static final float   REGRAB_BACKOFF    = 5;
+    // largest error (cm) of the odometer allowed when scanning for cans
+    private static final double  SCAN_TOLERANCE    = 3;
+    // errors (cm, deg) that pushing a can around may cause
+    private static final double  SLIP_POSITION     = 5;
+    private static final double  SLIP_THETA        = 5;
+    // extra rotation (deg) so a capture covers a full turn despite the filter's delay
+    private static final double  CAPTURE_MARGIN    = 15;
+    private static final int     CAPTURE_CAPACITY  = 600;
+    // the ultrasonic sensor sees the face of a can, its centre is this much farther (cm)
+    private static final double  CAN_RADIUS        = 3.3;
+    // points closer than this (cm) are neighbours in a cluster, see CanClusterer
+    private static final double  CLUSTER_RADIUS    = 5;
+    private static final int     MIN_CAN_POINTS    = 4;
+    private static final int     FULL_CAN_POINTS   = 10;
+    // size (cm) of the cells of the searched space, see CanRegistry
+    private static final double  SEARCH_CELL_SIZE  = 10;
+    // the robot moves on after scanning this many times from the same point
+    private static final int     MAX_POINT_SCANS   = 2;
+    // travelToCan trusts a reading this close (cm) to where the can should be
+    private static final double  APPROACH_ERROR    = 8;
+    // and otherwise sweeps this angle around its bearing to find it
+    private static final double  APPROACH_SWEEP    = 60;
+    // the final approach starts this far (cm) from the can, where readings are best
+    private static final double  APPROACH_DISTANCE = 20;
+    // the ultrasonic sensor can't see a can closer than this (cm)
+    private static final double  US_MIN_RANGE      = 5;
+    // size (cm) of the cells the scan points must cover, see ScanPointPlanner
+    private static final double  SCAN_CELL_SIZE    = 5;
+    private static final double  SCAN_COVERAGE     = 0.97;
+    // the robot's speeds (cm/s, deg/s) and time (s) to localize, see TourPlanner
+    private static final double  TOUR_SPEED        = 9;
+    private static final double  TOUR_TURN_SPEED   = 56;
+    private static final double  TOUR_LOCALIZATION = 4.5;
+    // wheel speeds (deg/s) of the two stages of coarseToFineCapture
+    private static final int     COARSE_SPEED      = 360;
+    private static final int     FINE_SPEED        = 120;
+    // width (deg) of the sectors the coarse stage flags
+    private static final double  SECTOR_WIDTH      = 15;
+    // a drive scanning for cans stops this far (cm) from a can in its way
+    private static final double  DRIVE_STOP_RANGE  = 15;
+    // samples a driving scan keeps between chunks, about a second of driving
+    private static final int     CHUNK_OVERLAP     = 30;
+    /**
+     * If true, {@link #scanZones()} scans with
+     * {@link #coarseToFineCapture(float[], float[], float)}, which only turns
+     * slowly toward what a fast turn saw. If false, it scans with
+     * {@link #captureCans(float[], float[], float)}.
+     */
+    public static boolean        COARSE_TO_FINE    = true;
+    /**
+     * If true, {@link #scanZones()} drives to the scan points with
+     * {@link #travelScanning(float[], float[], float[], float)}, and skips the
+     * scan of a point when the drive already found cans or searched around it.
+     */
+    public static boolean        DRIVING_SCAN      = true;
     private Odometer             odo;
     private MovementController   movCon;
     private Navigator            navigator;
@@ -43,6 +109,10 @@ public class CanSearch {
     private float[]              P_SZ_LL;
     private float[]              P_SZ_UR;
     private int                  currentScanPoint;
+    private PointCloud           pointCloud;
+    private CanClusterer         canClusterer;
+    private CanRegistry          canRegistry;
+    private TourPlanner          tourPlanner;
 
     /**
      * 
@@ -105,45 +175,53 @@ public class CanSearch {
         this.TILE_LENGTH = (float) tileLength;
         this.SCAN_RADIUS = scanRadius;
         this.currentScanPoint = 0;
+        this.pointCloud = new PointCloud(CAPTURE_CAPACITY);
+        this.canClusterer = new CanClusterer(
+                CLUSTER_RADIUS, MIN_CAN_POINTS, FULL_CAN_POINTS, FieldMap.FIELD_WIDTH * tileLength,
+                FieldMap.FIELD_HEIGHT * tileLength, CAPTURE_CAPACITY);
+        this.canRegistry = new CanRegistry(P_SZ_LL, P_SZ_UR, SEARCH_CELL_SIZE);
+        this.tourPlanner = new TourPlanner(TOUR_SPEED, TOUR_TURN_SPEED, TOUR_LOCALIZATION, tileLength);
+    }
+
+    /**
+     * @return the {@link CanRegistry} of the cans seen and the space searched
+     * 
+     * @author Julian Armour
+     * @since April 13, 2019
+     */
+    public CanRegistry getCanRegistry() {
+        return canRegistry;
     }
 
     /**
      * Sets the scan locations depending on the starting corner, the tunnel
      * position, the LL and the UR. It also sets all the dumping points used for
-     * discarding cans
+     * discarding cans. The scan points are the fewest grid intersections that
+     * see the whole zone, see {@link ScanPointPlanner}.
      * 
      * @author Alice Kazarine
      * @since March 26, 2019
      */
     public void setScanPositions() {
         // calculates the width and the height of the padded search area
-        float deltaX = (SZ_UR[0] - SZ_LL[0]) * TILE_LENGTH;
         float deltaY = (SZ_UR[1] - SZ_LL[1]) * TILE_LENGTH;
-
         int nYPoints = Math.round(deltaY / SCAN_RADIUS);
-        int nXPoints = Math.round(deltaX / SCAN_RADIUS);
-
-        for (int i = 0; i < nXPoints; i++) {
-            for (int j = 0; j < nYPoints; j++) {
-                float[] nextPos = new float[2];
-
-                nextPos[1] = SZ_LL[1] * TILE_LENGTH + j * SCAN_RADIUS;
-                if (startCorner == 1 || startCorner == 2) {
-                    nextPos[0] = SZ_UR[0] * TILE_LENGTH - i*SCAN_RADIUS;
-                    // set the dumping points depending on searchpoints
-                    if (i == 0) {
-                        dumpingPoints.add(new float[] { nextPos[0] + TILE_LENGTH / 2, nextPos[1] });
-                    }
-                } else {// startCorner = 0 or 3
-                    nextPos[0] = SZ_LL[0] * TILE_LENGTH + i * SCAN_RADIUS;
-                    // set the dumping points depending on searchpoints
-                    if (i == 0) {
-                        dumpingPoints.add(new float[] { nextPos[0] - TILE_LENGTH / 2, nextPos[1] });
-                    }
-                }
-                scanningPoints.add(nextPos);
+
+        // the dumping points are just outside the side of the zone the robot enters from
+        boolean enterFromRight = startCorner == 1 || startCorner == 2;
+        float entryX = enterFromRight ? P_SZ_UR[0] : P_SZ_LL[0];
+        for (int j = 0; j < nYPoints; j++) {
+            float y = P_SZ_LL[1] + j * SCAN_RADIUS;
+            if (enterFromRight) {
+                dumpingPoints.add(new float[] { entryX + TILE_LENGTH / 2, y });
+            } else {
+                dumpingPoints.add(new float[] { entryX - TILE_LENGTH / 2, y });
             }
         }
+
+        // as few scan points as possible that see the whole zone
+        ScanPointPlanner planner = new ScanPointPlanner(SCAN_RADIUS, US_MIN_RANGE, SCAN_CELL_SIZE, SCAN_COVERAGE);
+        scanningPoints.addAll(planner.plan(P_SZ_LL, P_SZ_UR, TILE_LENGTH, new float[] { entryX, P_SZ_LL[1] }));
         System.out.println("Created " + scanningPoints.size() + " scan points.");
     }
 
@@ -181,7 +259,10 @@ public class CanSearch {
     }
 
     /**
-     * Scans for remaining cans
+     * Scans for remaining cans. The robot goes straight to the cans in the
+     * {@link CanRegistry} and only scans from the scan points around which the
+     * search zone wasn't searched yet, so later trips don't find the same cans
+     * again.
      * 
      * @return <code>true</code> if it all the zones have been scanned or the time
      *         limit has been reached
@@ -191,65 +272,177 @@ public class CanSearch {
      */
     public boolean scanZones() {
         System.out.println("SCAN RADIUS: " + SCAN_RADIUS);
-        while (currentScanPoint < scanningPoints.size()) {
-//        	movCon.turnTo(movCon.calculateAngle(odo.getXYT()[0], odo.getXYT()[1], scanningPoints.get(currentScanPoint)[0], scanningPoints.get(currentScanPoint)[1]));
-//            localizer.quickLocalization();
-            movCon.travelTo(scanningPoints.get(currentScanPoint)[0], scanningPoints.get(currentScanPoint)[1], false);
-            localizer.quickLocalization();
-            movCon.driveDistance(-Main.LT_SENSOR_TO_WHEELBASE);
-            float[] canPos = fastCanScan(P_SZ_LL, P_SZ_UR, 355, SCAN_RADIUS);
-            if (canPos != null) {
-            	  System.out.println("Found a can");
-                boolean foundTheCan = travelToCan(canPos);
-                if (foundTheCan) {
-                    claw.closeClawForWeighing();
-                    claw.openClaw();
-                    colourDetector.collectColourData(1);
-                    CanColour canColour = colourDetector.getCanColour(colourDetector.getColourSamples());
-                    claw.closeClaw();
-                    boolean canIsHeavy = weightDetector.canIsHeavy();
-                    claw.closeClaw();
-
-                    // beep depending on canColour and canIsHeavy
-                    Beeper.colourAndWeightBeep(canIsHeavy, canColour);
-
-                    // if this is one the can colours we're looking for (most valuable)
-                    if (canColour == CanColour.RED || canColour == CanColour.YELLOW || Main.bringBackFirstCan) {
-                        Main.bringBackFirstCan = false;
-                        // go back to current scanning point
-                        float[] currentScanPoint = getCurrentScanPoint();
-                        movCon.travelTo(currentScanPoint[0], currentScanPoint[1], false);
-                        System.out.println("Found can, returning home");
-                        navigator.travelBackToStartingCorner();
-                        return false;
-                    } else {
-                        // wrong colour, discard it outside the search zone
-                        System.out.println("Dumping can");
-                        dumpCan();
+        float[] lastScanPoint = null;
+        int scans = 0;
+        while (true) {
+            // go straight to the cans already seen, from this trip or the previous ones,
+            // if they are next on the fastest tour
+            double[] curPos = odo.getXYT();
+            KnownCan target = planNextStop(curPos);
+            if (target == null) {
+                if (currentScanPoint >= scanningPoints.size()) {
+                    break;
+                }
+                float[] scanPoint = getCurrentScanPoint();
+                if (scanPoint != lastScanPoint) {
+                    scans = 0;
+                }
+                if (scans >= MAX_POINT_SCANS || !canRegistry.needsScan(scanPoint[0], scanPoint[1], SCAN_RADIUS)) {
+                    // scanned enough from here, or the other scan points already saw around it
+                    currentScanPoint++;
+                    scans = 0;
+                    continue;
+                }
+                lastScanPoint = scanPoint;
+                if (DRIVING_SCAN) {
+                    List<CanCandidate> seen = travelScanning(scanPoint, P_SZ_LL, P_SZ_UR, SCAN_RADIUS);
+                    if (!seen.isEmpty() || !canRegistry.needsScan(scanPoint[0], scanPoint[1], SCAN_RADIUS)) {
+                        // pick up the cans seen on the way first, or move on if the drive saw enough
                         continue;
                     }
                 } else {
-                    continue;
+                    movCon.travelTo(scanPoint[0], scanPoint[1], false);
                 }
-            } else {
-                currentScanPoint++;
-                claw.closeClaw();
-                if (currentScanPoint < getScanningPoints().size()) {
-                    float[] nextScanPt = getCurrentScanPoint();
-                    movCon.turnTo(nextScanPt[0], nextScanPt[1]);
-                    localizer.quickLocalization();
+                // only the scans in place count, a drive may have stopped short for a can
+                scans++;
+                // the can positions are only as good as the odometer
+                if (localizer.quickLocalizationIfNeeded(0, SCAN_TOLERANCE)) {
+                    movCon.driveDistance(-Main.LT_SENSOR_TO_WHEELBASE);
+                }
+                List<CanCandidate> candidates = COARSE_TO_FINE ? coarseToFineCapture(P_SZ_LL, P_SZ_UR, SCAN_RADIUS)
+                        : captureCans(P_SZ_LL, P_SZ_UR, SCAN_RADIUS);
+                System.out.println("Found " + candidates.size() + " cans, "
+                        + Math.round(100 * canRegistry.searchedFraction()) + "% searched");
+                if (candidates.isEmpty()) {
+                    currentScanPoint++;
+                    scans = 0;
+                    claw.closeClaw();
+                    if (currentScanPoint < getScanningPoints().size()) {
+                        float[] nextScanPt = getCurrentScanPoint();
+                        movCon.turnTo(nextScanPt[0], nextScanPt[1]);
+                        curPos = odo.getXYT();
+                        localizer.quickLocalizationIfNeeded(
+                                movCon.calculateDistance(curPos[0], curPos[1], nextScanPt[0], nextScanPt[1]),
+                                Navigator.LEG_TOLERANCE);
+                    }
                 }
+                continue;
             }
-        }
-        if (currentScanPoint >= scanningPoints.size()) {
-            System.out.println("All scanning points scanned, returning home");
+
+            System.out.println("Going to " + target);
+            if (!travelToCan(target.getPosition())) {
+                canRegistry.forget(target);
+                reopenScanPoints();
+                continue;
+            }
+            // make sure the can is in the claw before identifying it
+            boolean canIsHeld = claw.closeClawForWeighing() && claw.getCanDepth() >= MIN_CAN_DEPTH;
+            for (int attempt = 1; attempt < MAX_GRAB_ATTEMPTS && !canIsHeld; attempt++) {
+                canIsHeld = regrabCan();
+            }
+            if (!canIsHeld) {
+                System.out.println("Could not grab the can");
+                // the can may have been pushed, it will be found again by the next scan
+                canRegistry.forget(target);
+                reopenScanPoints();
+                // pushing the can around may have thrown the odometer off
+                localizer.getUncertainty().slipped(SLIP_POSITION, SLIP_THETA);
+                localizer.particleLocalization(TILE_LENGTH / 4);
+                continue;
+            }
+            claw.openClaw();
+            colourDetector.collectColourData(1);
+            CanColour canColour = colourDetector.getCanColour(colourDetector.getCanFaceSamples());
             claw.closeClaw();
-            navigator.travelBackToStartingCorner();
-            return true;
-        } else {
-            return false;
+            boolean canIsHeavy = weightDetector.canIsHeavy();
+            claw.closeClaw();
+            canRegistry.identified(target, canColour, canIsHeavy);
+
+            // beep depending on canColour and canIsHeavy
+            Beeper.colourAndWeightBeep(canIsHeavy, canColour);
+
+            // if this is one the can colours we're looking for (most valuable)
+            if (canColour == CanColour.RED || canColour == CanColour.YELLOW || Main.bringBackFirstCan) {
+                Main.bringBackFirstCan = false;
+                // go back to current scanning point
+                if (currentScanPoint < scanningPoints.size()) {
+                    float[] currentScanPoint = getCurrentScanPoint();
+                    navigator.travelDiagonallyTo(currentScanPoint[0], currentScanPoint[1]);
+                }
+                System.out.println("Found can, returning home");
+                navigator.travelBackToStartingCorner();
+                return false;
+            } else {
+                // wrong colour, discard it outside the search zone
+                System.out.println("Dumping can");
+                dumpCan();
+            }
+        }
+        System.out.println("All scanning points scanned, returning home");
+        claw.closeClaw();
+        navigator.travelBackToStartingCorner();
+        return true;
+    }
+
+    /**
+     * Re-sequences the rest of the trip from the robot's pose with the
+     * {@link TourPlanner}, over the cans in the {@link CanRegistry} and the scan
+     * points left. The scan points left are reordered in the tour's order, the
+     * ones around which the zone was already searched last.
+     * 
+     * @param pose
+     *            the robot's pose {x, y, theta}
+     * @return the can to go to first, or <code>null</code> if the first stop is
+     *         the current scan point
+     * 
+     * @author Julian Armour
+     * @since April 13, 2019
+     */
+    private KnownCan planNextStop(double[] pose) {
+        List<KnownCan> cans = canRegistry.getRemainingCans();
+        List<float[]> stops = new ArrayList<float[]>();
+        List<float[]> searched = new ArrayList<float[]>();
+        for (KnownCan can : cans) {
+            stops.add(can.getPosition());
+        }
+        for (int i = currentScanPoint; i < scanningPoints.size(); i++) {
+            float[] point = scanningPoints.get(i);
+            if (canRegistry.needsScan(point[0], point[1], SCAN_RADIUS)) {
+                stops.add(point);
+            } else {
+                searched.add(point);
+            }
+        }
+        if (stops.isEmpty()) {
+            return null;
+        }
+        int[] tour = tourPlanner.plan(pose, stops);
+        int next = currentScanPoint;
+        for (int stop : tour) {
+            if (stop >= cans.size()) {
+                scanningPoints.set(next++, stops.get(stop));
+            }
+        }
+        for (float[] point : searched) {
+            scanningPoints.set(next++, point);
+        }
+        return tour[0] < cans.size() ? cans.get(tour[0]) : null;
+    }
+
+    /**
+     * Moves the scan points already passed that need a scan again, like around a
+     * forgotten can, back into the scan points left, see
+     * {@link CanRegistry#forget(KnownCan)}.
+     */
+    private void reopenScanPoints() {
+        for (int i = currentScanPoint - 1; i >= 0; i--) {
+            float[] point = scanningPoints.get(i);
+            if (canRegistry.needsScan(point[0], point[1], SCAN_RADIUS)) {
+                scanningPoints.remove(i);
+                currentScanPoint--;
+                scanningPoints.add(currentScanPoint, point);
+            }
         }
-        
     }
 
     /**
@@ -267,8 +460,35 @@ public class CanSearch {
         localizer.quickLocalization();
     }
 
+    /**
+     * Tries to grab a can again after a missed grab. The robot backs up, then
+     * approaches the can using the ultrasonic sensor and closes the claw.
+     * 
+     * @return <code>true</code> if the can is now held by the claw
+     * 
+     * @author Julian Armour
+     * @since April 3, 2019
+     */
+    private boolean regrabCan() {
+        System.out.println("Regrabbing can");
+        claw.openClaw();
+        movCon.driveDistance(-REGRAB_BACKOFF, false);
+        USData.flush();
+        float dist = USData.getFilteredDistance();
+        if (dist >= TILE_LENGTH * 1.5) {
+            // the can is not in front of the robot anymore
+            return false;
+        }
+        movCon.driveDistance(dist - Main.US_SENSOR_TO_CLAW, false);
+        return claw.closeClaw() && claw.getCanDepth() >= MIN_CAN_DEPTH;
+    }
+
     /**
      * Causes the robot to travel to the general location of a detected can.
+     * <p>
+     * The robot turns toward the can and drives straight to it if the sensor
+     * sees it where it should be. It only sweeps for the can if it doesn't, which
+     * happens when the position was off or the can was pushed.
      * 
      * @param canPos
      *            the general position of a can, which the robot will travel to.
@@ -279,32 +499,256 @@ public class CanSearch {
      * @since March 5, 2019
      */
     public boolean travelToCan(float[] canPos) {
+        claw.openClaw();
+        if (!faceCan(canPos)) {
+            return false;
+        }
+        float dist = USData.getFreshDistance(System.currentTimeMillis());
+        if (dist > APPROACH_DISTANCE) {
+            movCon.driveDistance(dist - APPROACH_DISTANCE, false);
+            dist = USData.getFreshDistance(System.currentTimeMillis());
+        }
+        if (dist >= TILE_LENGTH * 1.5) {
+            return false;
+        }
+        // move forward until to appropriate distance for gripping the can
+        movCon.driveDistance(dist - Main.US_SENSOR_TO_CLAW, false);
+        return true;
+    }
+
+    /**
+     * Turns the robot toward a can, checking that the sensor sees it where it
+     * should be and sweeping around it otherwise.
+     * 
+     * @param canPos
+     *            the position {x, y} in cm of the can's centre
+     * @return true if the robot is facing the can
+     */
+    private boolean faceCan(float[] canPos) {
         double[] robotPos = odo.getXYT();
-        // travel robot ~17 cm in front of can
         movCon.turnTo(movCon.calculateAngle(robotPos[0], robotPos[1], canPos[0], canPos[1]));
-        movCon.driveDistance(movCon.calculateDistance(robotPos[0], robotPos[1], canPos[0], canPos[1]) - 20, false);
+        double expected = movCon.calculateDistance(robotPos[0], robotPos[1], canPos[0], canPos[1]) - CAN_RADIUS;
+        float dist = USData.getFreshDistance(System.currentTimeMillis());
+        if (Math.abs(dist - expected) <= APPROACH_ERROR) {
+            return true;
+        }
+        movCon.rotateAngle(APPROACH_SWEEP / 2, false, false);
+        return fastCanScan(P_SZ_LL, P_SZ_UR, APPROACH_SWEEP, (float) (expected + APPROACH_ERROR)) != null;
+    }
+
+    /**
+     * Captures the distances seen during a full turn in place as a
+     * {@link PointCloud} and clusters them into cans with the
+     * {@link CanClusterer}. The cans and the space seen to be empty are added to
+     * the {@link CanRegistry}. Every distance is matched to the pose the robot had
+     * when the median filter's sample was taken, so the points don't lag behind
+     * the rotation. Unlike {@link #fastCanScan(float[], float[], double, float)},
+     * the robot doesn't stop on the first reading, so every can visible from the
+     * scan point is found in one turn.
+     * 
+     * @param searchLL
+     *            lower left of the search zone
+     * @param searchUR
+     *            upper right of the search zone
+     * @param scanRadius
+     *            the maximum distance for detecting a can
+     * @return the cans found in the search zone, the most confident first
+     * 
+     * @author Julian Armour
+     * @since April 13, 2019
+     */
+    public List<CanCandidate> captureCans(float[] searchLL, float[] searchUR, float scanRadius) {
         claw.openClaw();
-        movCon.rotateAngle(90, false, false);
-        canPos = fastCanScan(P_SZ_LL, P_SZ_UR, 180, 30);
-        if (canPos == null) {
-            return false;
+        pointCloud.clear();
+        USData.flush();
+        MotionFuture rotation = movCon.submit(MotionCommand.rotateAngle(360 + CAPTURE_MARGIN, true));
+        while (!rotation.isDone()) {
+            pointCloud.add(System.currentTimeMillis(), odo.getXYT(), USData.getFilteredDistance());
+            try {
+                Thread.sleep(CAN_SCAN_PERIOD);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        // the median is half the filter's window behind the latest sample
+        long lag = USData.bufferSize() / 2 * CAN_SCAN_PERIOD;
+        pointCloud.project(lag, CAN_RADIUS, searchLL, searchUR, scanRadius);
+        List<CanCandidate> candidates = canRegistry.observe(canClusterer.cluster(pointCloud));
+        canRegistry.markSearched(pointCloud, lag, scanRadius);
+        return candidates;
+    }
+
+    /**
+     * Finds the cans around the robot like
+     * {@link #captureCans(float[], float[], float)} in less time. A fast coarse
+     * turn flags the sectors where something is in range, and the robot then only
+     * turns slowly over the flagged sectors, and the one on each side of them, to
+     * get the points the {@link CanClusterer} needs. When nothing is in range, the
+     * scan is a single fast turn.
+     * 
+     * @param searchLL
+     *            lower left of the search zone
+     * @param searchUR
+     *            upper right of the search zone
+     * @param scanRadius
+     *            the maximum distance for detecting a can
+     * @return the cans found in the search zone, the most confident first
+     * 
+     * @author Julian Armour
+     * @since April 13, 2019
+     */
+    public List<CanCandidate> coarseToFineCapture(float[] searchLL, float[] searchUR, float scanRadius) {
+        claw.openClaw();
+        long lag = USData.bufferSize() / 2 * CAN_SCAN_PERIOD;
+        double[] robotPos = odo.getXYT();
+
+        // coarse: flag the sectors something in range was seen in
+        pointCloud.clear();
+        sweep(MotionCommand.rotateAngle(360 + CAPTURE_MARGIN, true, COARSE_SPEED));
+        canRegistry.markSearched(pointCloud, lag, scanRadius);
+        int sectors = (int) Math.round(360 / SECTOR_WIDTH);
+        boolean[] flagged = new boolean[sectors];
+        int points = pointCloud.project(lag, CAN_RADIUS, searchLL, searchUR, scanRadius);
+        for (int i = 0; i < points; i++) {
+            double bearing = Math.toDegrees(
+                    Math.atan2(pointCloud.getX(i) - robotPos[0], pointCloud.getY(i) - robotPos[1]));
+            flagged[(int) ((bearing + 360) % 360 / SECTOR_WIDTH) % sectors] = true;
+        }
+        // the filter's delay and the can's width can spill into the next sectors
+        boolean[] sweep = new boolean[sectors];
+        int first = -1;
+        for (int s = 0; s < sectors; s++) {
+            sweep[s] = flagged[s] || flagged[(s + 1) % sectors] || flagged[(s + sectors - 1) % sectors];
+            if (!sweep[s] && first == -1) {
+                first = s;
+            }
+        }
+        if (points == 0) {
+            return new ArrayList<CanCandidate>();
+        }
+
+        // fine: sweep every run of sectors clockwise
+        pointCloud.clear();
+        if (first == -1) {
+            sweep(MotionCommand.rotateAngle(360 + CAPTURE_MARGIN, true, FINE_SPEED));
         } else {
-        	if(movCon.calculateDistance(odo.getXYT()[0], odo.getXYT()[1], canPos[0], canPos[1]) > 13) {
-        		movCon.rotateAngle(10, true);
-        	}
-            // move forward until to appropriate distance for gripping the can
-            USData.flush();
+            for (int s = first + 1; s <= first + sectors; s++) {
+                if (!sweep[s % sectors] || sweep[(s - 1) % sectors]) {
+                    continue;
+                }
+                int length = 0;
+                while (sweep[(s + length) % sectors]) {
+                    length++;
+                }
+                movCon.turnTo(s % sectors * SECTOR_WIDTH);
+                sweep(MotionCommand.rotateAngle(length * SECTOR_WIDTH + CAPTURE_MARGIN, true, FINE_SPEED));
+            }
+        }
+        pointCloud.project(lag, CAN_RADIUS, searchLL, searchUR, scanRadius);
+        List<CanCandidate> candidates = canRegistry.observe(canClusterer.cluster(pointCloud));
+        canRegistry.markSearched(pointCloud, lag, scanRadius);
+        return candidates;
+    }
+
+    /**
+     * Travels to a position while the ultrasonic sensor looks for cans ahead of
+     * the robot. Every distance is matched to the pose the robot had when the
+     * sensor measured it, like in {@link #captureCans(float[], float[], float)},
+     * so the drive doubles as a narrow scan of the path. The cans seen are added
+     * to the {@link CanRegistry} and the path is marked as searched. A drive too
+     * long for the {@link PointCloud} is processed in overlapping chunks. The
+     * robot stops short of a can in its way instead of pushing it.
+     * 
+     * @param destination
+     *            the position {x, y} in cm to travel to
+     * @param searchLL
+     *            lower left of the search zone
+     * @param searchUR
+     *            upper right of the search zone
+     * @param scanRadius
+     *            the maximum distance for detecting a can
+     * @return the cans seen on the way, the most confident first
+     * 
+     * @author Julian Armour
+     * @since April 13, 2019
+     */
+    public List<CanCandidate> travelScanning(float[] destination, float[] searchLL, float[] searchUR,
+            float scanRadius) {
+        double[] robotPos = odo.getXYT();
+        movCon.turnTo(movCon.calculateAngle(robotPos[0], robotPos[1], destination[0], destination[1]));
+        robotPos = odo.getXYT();
+        double distance = movCon.calculateDistance(robotPos[0], robotPos[1], destination[0], destination[1]);
+        long lag = USData.bufferSize() / 2 * CAN_SCAN_PERIOD;
+
+        List<CanCandidate> candidates = new ArrayList<CanCandidate>();
+        pointCloud.clear();
+        long stopped = System.currentTimeMillis();
+        pointCloud.add(stopped, odo.getXYT(), USData.getFreshDistance(stopped), USData.getSampleTime());
+        MotionFuture drive = movCon.submit(MotionCommand.driveDistance(distance));
+        while (!drive.isDone()) {
+            if (pointCloud.isFull()) {
+                candidates.addAll(processChunk(lag, searchLL, searchUR, scanRadius));
+                // the overlap lets a can seen at the end of the chunk be clustered whole
+                pointCloud.keepLatest(CHUNK_OVERLAP);
+            }
             float dist = USData.getFilteredDistance();
-            if (dist < TILE_LENGTH*1.5) {
-                movCon.driveDistance(dist - Main.US_SENSOR_TO_CLAW, false);
+            pointCloud.add(System.currentTimeMillis(), odo.getXYT(), dist, USData.getSampleTime());
+            if (dist < DRIVE_STOP_RANGE && inSearchZone(project(dist), searchLL, searchUR)) {
+                drive.cancel(true);
+                drive.await();
+                break;
             }
-            return true;
+            Delay.msDelay(CAN_SCAN_PERIOD);
+        }
+        candidates.addAll(processChunk(lag, searchLL, searchUR, scanRadius));
+        return candidates;
+    }
+
+    /**
+     * Clusters the samples of the {@link PointCloud} and adds what they saw to
+     * the {@link CanRegistry}.
+     * 
+     * @return the cans found
+     */
+    private List<CanCandidate> processChunk(long lag, float[] searchLL, float[] searchUR, float scanRadius) {
+        pointCloud.project(lag, CAN_RADIUS, searchLL, searchUR, scanRadius);
+        List<CanCandidate> candidates = canRegistry.observe(canClusterer.cluster(pointCloud));
+        canRegistry.markSearched(pointCloud, lag, scanRadius);
+        return candidates;
+    }
+
+    /**
+     * Adds the distances seen during a rotation to the {@link PointCloud}. The
+     * robot is still when the sweep starts, so a sample of the still pose is
+     * added first and the rotation's samples are never interpolated with the
+     * poses of an earlier sweep.
+     * 
+     * @param rotation
+     *            a rotation in place
+     */
+    private void sweep(MotionCommand rotation) {
+        long stopped = System.currentTimeMillis();
+        pointCloud.add(stopped, odo.getXYT(), USData.getFreshDistance(stopped));
+        MotionFuture future = movCon.submit(rotation);
+        while (!future.isDone()) {
+            pointCloud.add(System.currentTimeMillis(), odo.getXYT(), USData.getFilteredDistance());
+            Delay.msDelay(CAN_SCAN_PERIOD);
         }
     }
 
     /**
      * Scans for cans, if it finds one it returns it's position. If it does not find
      * a can, it returns <code>null</code>
+     * <p>
+     * The rotation runs on the {@link MotionExecutor} and keeps going past the
+     * leading edge of an object until its trailing edge, which cancels it. The
+     * headings of both edges are taken from the poses the robot had when the
+     * median filter's samples were taken, and the robot turns back to the
+     * heading halfway between them, which faces the middle of the can instead
+     * of its leading edge. The distance is then confirmed as soon as the sensor
+     * has taken a full window of samples since the robot stopped, see
+     * {@link MedianDistanceSensor#getFreshDistance(long)}, and is measured along
+     * the middle of the beam so it is the distance to the can's nearest face.
      * 
      * @param searchLL
      *            lower left of the search zone
@@ -314,93 +758,76 @@ public class CanSearch {
      *            the angle the robot will rotate. 0-359
      * @param scanRadius
      *            the maximum distance for detecting a can
-     * @return the position of a can in the scan radius, or <code>null</code> if a
-     *         can is not found
+     * @return the position of the face of a can in the scan radius, which the
+     *         robot is facing, or <code>null</code> if a can is not found
      * 
      * @author Julian Armour
      * @since March 19, 2019
      */
     public float[] fastCanScan(float[] searchLL, float[] searchUR, double sweepAngle, float scanRadius) {
         claw.openClaw();
-        double[] robotPos = odo.getXYT();
-        // start rotating clockwise
-        // scan for positions that are within the search zone
-        final double finalHeading = (robotPos[2] + sweepAngle) % 360.0;
-
-        final boolean[] atFinalHeading = { false }; // anonymous class trick for outer-scope variables
-        Runnable rotater = new Runnable() {
-            @Override
-            public void run() {
-                movCon.turnClockwiseTo(finalHeading, false);
-//                System.out.println("Yes we have turned");
-                // the robot is only at the final heading if it wasn't interrupted by detecting
-                // a can
-                if (!Thread.interrupted()) {
-                	System.out.println(10);
-                    atFinalHeading[0] = true;
-                }
-            }
-        };
-
-        USData.flush();
-        Delay.msDelay(2000);
-        Thread rotT = new Thread(rotater);
-        System.out.println(1);
-        rotT.start(); // start rotating
-        System.out.println("Starting rotation");
-        float[] position = new float[2];
-        while (!atFinalHeading[0]) {
+        double startHeading = odo.getXYT()[2];
+        double finalHeading = (startHeading + sweepAngle) % 360.0;
+        long lag = USData.bufferSize() / 2 * CAN_SCAN_PERIOD;
+        pointCloud.clear();
+        USData.getFreshDistance(System.currentTimeMillis());
+        MotionFuture rotation = movCon.submit(MotionCommand.turnClockwiseTo(finalHeading));
+        // the first sample seeing the current object, and how far the sweep must go
+        // before objects count again after a false positive
+        int leading = -1;
+        double armedAfter = 0;
+        while (true) {
+            boolean sweeping = !rotation.isDone();
             float dist = USData.getFilteredDistance();
-            if (dist <= scanRadius) {
-            	double angle = odo.getXYT()[2];
-                position[0] = (float) (dist * Math.sin(Math.toRadians(angle)) + robotPos[0]);
-                position[1] = (float) (dist * Math.cos(Math.toRadians(angle)) + robotPos[1]);
-//                System.out.println("Saw something");
-                if (inSearchZone(position, searchLL, searchUR)) {
-                	  System.out.println(3);
-                    rotT.interrupt();
-                    movCon.stopMotors();
-                    System.out.println(4);
-
-                    // more checks to see if it is really a can
-                    double meanDist = 0;
-                    for (int i = 0; i < 10; i++) {
-                        meanDist += (double) USData.getFilteredDistance();
-                        try {
-                            Thread.sleep(30);
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
-                    }
-                    meanDist /= 10;
-                    angle = odo.getXYT()[2];
-                    position[0] = (float) (meanDist * Math.sin(Math.toRadians(angle)) + robotPos[0]);
-                    position[1] = (float) (meanDist * Math.cos(Math.toRadians(angle)) + robotPos[1]);
-                    if (inSearchZone(position, searchLL, searchUR)) {
-                    	System.out.println(5);
-                        // true positive, return
+            pointCloud.add(System.currentTimeMillis(), odo.getXYT(), dist);
+            int sample = pointCloud.sampleCount() - 1;
+            double swept = (odo.getXYT()[2] - startHeading + 360) % 360;
+            boolean seen = sweeping && dist <= scanRadius && swept >= armedAfter
+                    && inSearchZone(project(dist), searchLL, searchUR);
+            if (leading == -1 && seen) {
+                leading = sample;
+            } else if (leading != -1 && !seen) {
+                // the trailing edge, the object is halfway between the edges
+                rotation.cancel(true);
+                rotation.await();
+                double[] object = pointCloud.bisect(leading, sample - 1, lag, 0);
+                leading = -1;
+                if (object != null) {
+                    movCon.turnTo(object[2]);
+                    // confirm it's a can, facing its middle
+                    float range = USData.getFreshDistance(System.currentTimeMillis());
+                    float[] position = project(range);
+                    if (range <= scanRadius && inSearchZone(position, searchLL, searchUR)) {
                         return position;
-                    } else {
-                        // false positive, keep scanning
-                        rotT = new Thread(rotater);
-                        Delay.msDelay(2000);
-                        System.out.println(6);
-                        rotT.start(); // start rotating again
-                        System.out.println(7);
                     }
                 }
+                // false positive, finish the rotation unless the robot stopped past its end
+                armedAfter = swept;
+                if ((finalHeading - odo.getXYT()[2] + 360) % 360 > sweepAngle) {
+                    break;
+                }
+                rotation = movCon.submit(MotionCommand.turnClockwiseTo(finalHeading));
+                continue;
             }
-
-            try {
-                Thread.sleep(CAN_SCAN_PERIOD);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+            if (!sweeping) {
+                break;
             }
+            Delay.msDelay(CAN_SCAN_PERIOD);
         }
-        System.out.println(8);
         return null;
     }
 
+    /**
+     * @param distance
+     *            a distance measured by the ultrasonic sensor in cm
+     * @return the position {x, y} of what the sensor sees from the robot's pose
+     */
+    private float[] project(float distance) {
+        double[] pose = odo.getXYT();
+        return new float[] { (float) (pose[0] + distance * Math.sin(Math.toRadians(pose[2]))),
+                (float) (pose[1] + distance * Math.cos(Math.toRadians(pose[2]))) };
+    }
+
     /**
      * @deprecated use {@link #fastCanScan(float[], float[], double, float)}
      *             instead. Scans for cans by rotating 360-degrees and returns all
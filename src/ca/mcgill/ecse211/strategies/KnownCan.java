@@ -0,0 +1,95 @@
+package ca.mcgill.ecse211.strategies;
+
+import ca.mcgill.ecse211.detectors.CanColour;
+
+/**
+ * A can kept in the {@link CanRegistry}: where it was seen, how many times,
+ * and what it turned out to be once the robot grabbed it.
+ * 
+ * @author Julian Armour
+ * @since April 13, 2019
+ * @version 1
+ */
+public class KnownCan {
+    private float     x;
+    private float     y;
+    private int       observations;
+    private CanColour colour;
+    private boolean   heavy;
+    private boolean   identified;
+    private boolean   removed;
+
+    KnownCan(float x, float y) {
+        this.x = x;
+        this.y = y;
+        this.observations = 1;
+    }
+
+    /**
+     * Averages a new sighting into the position, weighting every sighting the
+     * same.
+     */
+    void observe(float x, float y) {
+        observations++;
+        this.x += (x - this.x) / observations;
+        this.y += (y - this.y) / observations;
+    }
+
+    void identify(CanColour colour, boolean heavy) {
+        this.colour = colour;
+        this.heavy = heavy;
+        this.identified = true;
+    }
+
+    void remove() {
+        this.removed = true;
+    }
+
+    /**
+     * @return the position {x, y} in cm of the can's centre
+     */
+    public float[] getPosition() {
+        return new float[] { x, y };
+    }
+
+    /**
+     * @return how many scans saw the can
+     */
+    public int getObservations() {
+        return observations;
+    }
+
+    /**
+     * @return the can's colour, or <code>null</code> if it wasn't identified
+     */
+    public CanColour getColour() {
+        return colour;
+    }
+
+    /**
+     * @return true if the can was identified as heavy
+     */
+    public boolean isHeavy() {
+        return heavy;
+    }
+
+    /**
+     * @return true if the robot grabbed and identified the can
+     */
+    public boolean isIdentified() {
+        return identified;
+    }
+
+    /**
+     * @return true if the can is not in the search zone anymore, or wasn't there
+     */
+    public boolean isRemoved() {
+        return removed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("can (%.1f, %.1f) seen %d times", x, y, observations)
+                + (identified ? " " + colour + (heavy ? " heavy" : " light") : "");
+    }
+}
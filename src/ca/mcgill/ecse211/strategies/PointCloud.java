@@ -0,0 +1,280 @@
+package ca.mcgill.ecse211.strategies;
+
+/**
+ * The distances measured by the ultrasonic sensor during a scan, each one with
+ * the time it was taken and the odometer's pose at that time. Once the scan is
+ * over, the samples are projected into points on the field, using the pose the
+ * robot had when the sensor actually saw the object. The samples can be taken
+ * while turning in place or while driving, only the poses matter.
+ * <p>
+ * The arrays are allocated once, so a scan doesn't create any garbage.
+ * 
+ * @author Julian Armour
+ * @since April 13, 2019
+ * @version 3
+ */
+public class PointCloud {
+    private long[]   times;
+    private long[]   distanceTimes;
+    private double[] robotX;
+    private double[] robotY;
+    private double[] headings;
+    private float[]  distances;
+    private int      samples;
+    private float[]  pointX;
+    private float[]  pointY;
+    private int[]    pointSample;
+    private int      points;
+
+    /**
+     * @param capacity
+     *            the most samples the cloud can hold, later samples are ignored
+     */
+    public PointCloud(int capacity) {
+        this.times = new long[capacity];
+        this.distanceTimes = new long[capacity];
+        this.robotX = new double[capacity];
+        this.robotY = new double[capacity];
+        this.headings = new double[capacity];
+        this.distances = new float[capacity];
+        this.pointX = new float[capacity];
+        this.pointY = new float[capacity];
+        this.pointSample = new int[capacity];
+    }
+
+    /**
+     * Forgets all the samples and points.
+     */
+    public void clear() {
+        samples = 0;
+        points = 0;
+    }
+
+    /**
+     * Forgets all the samples but the latest ones, which stay to match the
+     * distances of the next samples to their poses. A long scan can so be
+     * projected in chunks.
+     * 
+     * @param count
+     *            how many of the latest samples to keep
+     */
+    public void keepLatest(int count) {
+        count = Math.min(count, samples);
+        int first = samples - count;
+        System.arraycopy(times, first, times, 0, count);
+        System.arraycopy(distanceTimes, first, distanceTimes, 0, count);
+        System.arraycopy(robotX, first, robotX, 0, count);
+        System.arraycopy(robotY, first, robotY, 0, count);
+        System.arraycopy(headings, first, headings, 0, count);
+        System.arraycopy(distances, first, distances, 0, count);
+        samples = count;
+        points = 0;
+    }
+
+    /**
+     * @return true if no more samples can be added
+     */
+    public boolean isFull() {
+        return samples == times.length;
+    }
+
+    /**
+     * Adds a sample.
+     * 
+     * @param time
+     *            when the sample was taken, in ms
+     * @param pose
+     *            the odometer's pose {x, y, theta} when the sample was taken
+     * @param distance
+     *            the distance measured in cm
+     */
+    public void add(long time, double[] pose, float distance) {
+        add(time, pose, distance, time);
+    }
+
+    /**
+     * Adds a sample whose distance was measured at a different time than the
+     * pose was read, like the time of the sensor's latest sample, see
+     * {@link ca.mcgill.ecse211.sensors.MedianDistanceSensor#getSampleTime()}.
+     * 
+     * @param time
+     *            when the pose was read, in ms
+     * @param pose
+     *            the odometer's pose {x, y, theta} at that time
+     * @param distance
+     *            the distance measured in cm
+     * @param distanceTime
+     *            when the distance was measured, in ms
+     */
+    public void add(long time, double[] pose, float distance, long distanceTime) {
+        if (samples == times.length) {
+            return;
+        }
+        double heading = pose[2];
+        if (samples > 0) {
+            // unwrap the heading around the previous one so it can be interpolated
+            double previous = headings[samples - 1];
+            heading = previous + (((heading - previous) % 360 + 540) % 360 - 180);
+        }
+        times[samples] = time;
+        distanceTimes[samples] = distanceTime;
+        robotX[samples] = pose[0];
+        robotY[samples] = pose[1];
+        headings[samples] = heading;
+        distances[samples] = distance;
+        samples++;
+    }
+
+    /**
+     * Projects the samples into points, replacing the points of a previous
+     * projection. Samples farther than the maximum range or whose point lands
+     * outside the zone are left out.
+     * 
+     * @param lag
+     *            how late, in ms, the distances are compared to the poses, like
+     *            the delay of a median filter
+     * @param offset
+     *            added to every distance in cm, like the radius of a can to get
+     *            its centre instead of its face
+     * @param zoneLL
+     *            the lower left {x, y} of the zone the points must be in
+     * @param zoneUR
+     *            the upper right {x, y} of the zone the points must be in
+     * @param maxRange
+     *            the largest distance in cm kept
+     * @return the number of points
+     */
+    public int project(long lag, double offset, float[] zoneLL, float[] zoneUR, float maxRange) {
+        points = 0;
+        double[] pose = new double[3];
+        for (int i = 0; i < samples; i++) {
+            if (distances[i] > maxRange || !poseAt(i, lag, pose)) {
+                continue;
+            }
+            double h = Math.toRadians(pose[2]);
+            double range = distances[i] + offset;
+            float px = (float) (pose[0] + range * Math.sin(h));
+            float py = (float) (pose[1] + range * Math.cos(h));
+            if (px < zoneLL[0] || px > zoneUR[0] || py < zoneLL[1] || py > zoneUR[1]) {
+                continue;
+            }
+            pointX[points] = px;
+            pointY[points] = py;
+            pointSample[points] = i;
+            points++;
+        }
+        return points;
+    }
+
+    /**
+     * Finds the pose the robot had when the distance of a sample was measured.
+     * 
+     * @param sample
+     *            the index of the sample
+     * @param lag
+     *            how late, in ms, the distance is compared to the poses
+     * @param pose
+     *            filled with the pose {x, y, theta}, theta is unwrapped
+     * @return false if no pose was recorded early enough to match the distance
+     */
+    boolean poseAt(int sample, long lag, double[] pose) {
+        long time = distanceTimes[sample] - lag;
+        if (time < times[0]) {
+            return false;
+        }
+        int j = sample;
+        while (j > 0 && times[j - 1] > time) {
+            j--;
+        }
+        // interpolate the pose between the samples j - 1 and j
+        double f = 1;
+        int k = Math.max(j - 1, 0);
+        if (j > 0 && times[j] > times[k]) {
+            f = (double) (time - times[k]) / (times[j] - times[k]);
+        }
+        pose[0] = robotX[k] + f * (robotX[j] - robotX[k]);
+        pose[1] = robotY[k] + f * (robotY[j] - robotY[k]);
+        pose[2] = headings[k] + f * (headings[j] - headings[k]);
+        return true;
+    }
+
+    /**
+     * Finds the middle of an object seen by a run of consecutive samples. The
+     * ultrasonic sensor's beam is wide, so it sees the object from the heading
+     * where the edge of the beam reaches its leading edge to the heading where it
+     * leaves its trailing edge. The object is halfway between, and the beam
+     * measures the distance to the object's nearest face the whole time, so the
+     * shortest distance of the run is the one along the middle.
+     * 
+     * @param first
+     *            the first sample that saw the object
+     * @param last
+     *            the last sample that saw the object
+     * @param lag
+     *            how late, in ms, the distances are compared to the poses
+     * @param offset
+     *            added to the distance in cm, like the radius of a can
+     * @return the position {x, y} of the object, the bisected heading in [0,
+     *         360) and the distance from the pose in the middle of the run, or
+     *         <code>null</code> if the run started before any pose was recorded
+     */
+    public double[] bisect(int first, int last, long lag, double offset) {
+        double[] leading = new double[3];
+        double[] trailing = new double[3];
+        if (!poseAt(first, lag, leading) || !poseAt(last, lag, trailing)) {
+            return null;
+        }
+        float range = distances[first];
+        for (int i = first + 1; i <= last; i++) {
+            range = Math.min(range, distances[i]);
+        }
+        double x = (leading[0] + trailing[0]) / 2;
+        double y = (leading[1] + trailing[1]) / 2;
+        double heading = (leading[2] + trailing[2]) / 2;
+        double h = Math.toRadians(heading);
+        return new double[] { x + (range + offset) * Math.sin(h), y + (range + offset) * Math.cos(h),
+                (heading % 360 + 360) % 360, range + offset };
+    }
+
+    /**
+     * @return the distance in cm measured by a sample
+     */
+    float getDistance(int sample) {
+        return distances[sample];
+    }
+
+    /**
+     * @return the number of samples
+     */
+    public int sampleCount() {
+        return samples;
+    }
+
+    /**
+     * @return the number of points of the last projection
+     */
+    public int pointCount() {
+        return points;
+    }
+
+    /**
+     * @return the x position in cm of a point
+     */
+    public float getX(int point) {
+        return pointX[point];
+    }
+
+    /**
+     * @return the y position in cm of a point
+     */
+    public float getY(int point) {
+        return pointY[point];
+    }
+
+    /**
+     * @return the time in ms the sample of a point was taken
+     */
+    public long getTime(int point) {
+        return times[pointSample[point]];
+    }
+}
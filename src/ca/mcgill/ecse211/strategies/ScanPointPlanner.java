@@ -0,0 +1,164 @@
+package ca.mcgill.ecse211.strategies;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Picks the scan points in a search zone so the ultrasonic sensor sees all of
+ * it from as few points as possible. The zone is split into small cells, and
+ * every grid intersection in the zone is a candidate point covering the cells
+ * between the sensor's blind distance and its range. The points are chosen
+ * greedily, each time the one covering the most cells not covered yet, which
+ * is within a small factor of the fewest points possible.
+ * <p>
+ * What every candidate covers is kept as a bit set in a <code>long[]</code>,
+ * so counting the new cells of a candidate is a few AND and bit counts.
+ * 
+ * @author Julian Armour
+ * @since April 13, 2019
+ * @version 2
+ */
+public class ScanPointPlanner {
+    private double range;
+    private double minRange;
+    private double cellSize;
+    private double coverage;
+
+    /**
+     * @param range
+     *            the distance in cm up to which the sensor is trusted to see a can
+     * @param minRange
+     *            the distance in cm under which the sensor can't see a can
+     * @param cellSize
+     *            the size in cm of the cells the zone is split into
+     * @param coverage
+     *            the fraction of the zone in [0, 1] that must be seen, the last
+     *            few cells in the corners of the zone can cost a point each
+     */
+    public ScanPointPlanner(double range, double minRange, double cellSize, double coverage) {
+        this.range = range;
+        this.minRange = minRange;
+        this.cellSize = cellSize;
+        this.coverage = coverage;
+    }
+
+    /**
+     * Plans the scan points of a zone, ordered so every point is the closest one
+     * left to the previous one.
+     * 
+     * @param zoneLL
+     *            the lower left {x, y} in cm of the zone
+     * @param zoneUR
+     *            the upper right {x, y} in cm of the zone
+     * @param spacing
+     *            the distance in cm between the grid lines, the candidates are
+     *            their intersections
+     * @param entry
+     *            the position {x, y} in cm where the robot enters the zone
+     * @return the scan points {x, y} in cm
+     */
+    public List<float[]> plan(float[] zoneLL, float[] zoneUR, double spacing, float[] entry) {
+        // the cells to cover
+        int columns = Math.max(1, (int) Math.ceil((zoneUR[0] - zoneLL[0]) / cellSize));
+        int rows = Math.max(1, (int) Math.ceil((zoneUR[1] - zoneLL[1]) / cellSize));
+        int cells = columns * rows;
+        double[] cellX = new double[cells];
+        double[] cellY = new double[cells];
+        for (int c = 0; c < cells; c++) {
+            cellX[c] = Math.min(zoneLL[0] + (c % columns + 0.5) * cellSize, zoneUR[0]);
+            cellY[c] = Math.min(zoneLL[1] + (c / columns + 0.5) * cellSize, zoneUR[1]);
+        }
+
+        // the candidates and the cells they cover
+        int xPoints = (int) Math.round((zoneUR[0] - zoneLL[0]) / spacing) + 1;
+        int yPoints = (int) Math.round((zoneUR[1] - zoneLL[1]) / spacing) + 1;
+        int candidates = xPoints * yPoints;
+        int words = (cells + 63) / 64;
+        float[][] points = new float[candidates][];
+        long[][] covered = new long[candidates][words];
+        long[] coverable = new long[words];
+        for (int p = 0; p < candidates; p++) {
+            points[p] = new float[] { (float) (zoneLL[0] + p % xPoints * spacing),
+                    (float) (zoneLL[1] + p / xPoints * spacing) };
+            for (int c = 0; c < cells; c++) {
+                if (covers(points[p][0], points[p][1], cellX[c], cellY[c])) {
+                    covered[p][c >> 6] |= 1L << c;
+                }
+            }
+            for (int w = 0; w < words; w++) {
+                coverable[w] |= covered[p][w];
+            }
+        }
+
+        // greedy set cover, ties go to the candidate closest to the last one chosen
+        long[] uncovered = coverable.clone();
+        boolean[] chosen = new boolean[candidates];
+        List<float[]> scanPoints = new ArrayList<float[]>();
+        float[] last = entry;
+        int left = 0;
+        for (int w = 0; w < words; w++) {
+            left += Long.bitCount(uncovered[w]);
+        }
+        int allowedLeft = (int) ((1 - coverage) * left);
+        while (left > allowedLeft) {
+            int best = -1;
+            int bestGain = 0;
+            double bestDistance = 0;
+            for (int p = 0; p < candidates; p++) {
+                if (chosen[p]) {
+                    continue;
+                }
+                int gain = 0;
+                for (int w = 0; w < words; w++) {
+                    gain += Long.bitCount(covered[p][w] & uncovered[w]);
+                }
+                double distance = Math.hypot(points[p][0] - last[0], points[p][1] - last[1]);
+                if (gain > bestGain || (gain == bestGain && gain > 0 && distance < bestDistance)) {
+                    best = p;
+                    bestGain = gain;
+                    bestDistance = distance;
+                }
+            }
+            if (best == -1) {
+                break;
+            }
+            chosen[best] = true;
+            for (int w = 0; w < words; w++) {
+                uncovered[w] &= ~covered[best][w];
+            }
+            left -= bestGain;
+            scanPoints.add(points[best]);
+            last = points[best];
+        }
+        return orderFrom(scanPoints, entry);
+    }
+
+    /**
+     * @return true if a can at a cell is seen from a point
+     */
+    private boolean covers(double x, double y, double cellX, double cellY) {
+        double distance = Math.hypot(cellX - x, cellY - y);
+        return distance >= minRange && distance <= range;
+    }
+
+    /**
+     * Orders points so every one is the closest one left to the previous one.
+     */
+    private static List<float[]> orderFrom(List<float[]> points, float[] start) {
+        List<float[]> left = new ArrayList<float[]>(points);
+        List<float[]> ordered = new ArrayList<float[]>();
+        float[] last = start;
+        while (!left.isEmpty()) {
+            int nearest = 0;
+            for (int i = 1; i < left.size(); i++) {
+                if (Math.hypot(left.get(i)[0] - last[0], left.get(i)[1] - last[1])
+                        < Math.hypot(left.get(nearest)[0] - last[0], left.get(nearest)[1] - last[1])) {
+                    nearest = i;
+                }
+            }
+            last = left.remove(nearest);
+            ordered.add(last);
+        }
+        return ordered;
+    }
+}
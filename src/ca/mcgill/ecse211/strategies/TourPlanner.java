@@ -0,0 +1,179 @@
+package ca.mcgill.ecse211.strategies;
+
+import java.util.List;
+
+/**
+ * Orders the stops of a trip in the search zone, like the scan points left and
+ * the cans already seen, to take the least time. The time of a tour counts the
+ * straight legs between the stops, the turn in place before every leg and a
+ * localization before the long legs. The robot doesn't come back to where it
+ * started, so the tour is an open path.
+ * <p>
+ * The tour starts as the nearest neighbour tour and is improved by 2-opt, which
+ * reverses a part of the tour, and Or-opt, which moves one to three
+ * consecutive stops elsewhere, until neither makes it any faster.
+ * 
+ * @author Julian Armour
+ * @since April 13, 2019
+ * @version 1
+ */
+public class TourPlanner {
+    private static final int OR_OPT_LENGTH = 3;
+
+    private double           speed;
+    private double           turnSpeed;
+    private double           localizationTime;
+    private double           localizationDistance;
+    // legTime[i][j] is the time of the leg from stop i to stop j, the start is stop n
+    private double[][]       legTime;
+    private double[][]       bearing;
+
+    /**
+     * @param speed
+     *            the robot's speed in cm/s
+     * @param turnSpeed
+     *            the robot's speed turning in place in deg/s
+     * @param localizationTime
+     *            the time in s of a localization
+     * @param localizationDistance
+     *            the robot localizes before legs longer than this, in cm
+     */
+    public TourPlanner(double speed, double turnSpeed, double localizationTime, double localizationDistance) {
+        this.speed = speed;
+        this.turnSpeed = turnSpeed;
+        this.localizationTime = localizationTime;
+        this.localizationDistance = localizationDistance;
+    }
+
+    /**
+     * Plans the fastest order found to visit stops.
+     * 
+     * @param start
+     *            the robot's pose {x, y, theta}
+     * @param stops
+     *            the positions {x, y} in cm to visit
+     * @return the indices of the stops in the order they should be visited
+     */
+    public int[] plan(double[] start, List<float[]> stops) {
+        int n = stops.size();
+        buildMatrix(start, stops);
+
+        // nearest neighbour tour
+        int[] tour = new int[n];
+        boolean[] visited = new boolean[n];
+        int last = n;
+        for (int i = 0; i < n; i++) {
+            int next = -1;
+            for (int j = 0; j < n; j++) {
+                if (!visited[j] && (next == -1 || legTime[last][j] < legTime[last][next])) {
+                    next = j;
+                }
+            }
+            tour[i] = next;
+            visited[next] = true;
+            last = next;
+        }
+
+        double best = cost(start[2], tour);
+        int[] candidate = new int[n];
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            // 2-opt: reverse the stops i to j
+            for (int i = 0; i < n - 1; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    System.arraycopy(tour, 0, candidate, 0, n);
+                    for (int a = i, b = j; a < b; a++, b--) {
+                        candidate[a] = tour[b];
+                        candidate[b] = tour[a];
+                    }
+                    double time = cost(start[2], candidate);
+                    if (time < best - 1e-6) {
+                        best = time;
+                        System.arraycopy(candidate, 0, tour, 0, n);
+                        improved = true;
+                    }
+                }
+            }
+            // Or-opt: move the segment of stops i to i + length - 1 before stop k
+            for (int length = 1; length <= OR_OPT_LENGTH; length++) {
+                for (int i = 0; i + length <= n; i++) {
+                    for (int k = 0; k <= n; k++) {
+                        if (k >= i && k <= i + length) {
+                            continue;
+                        }
+                        moveSegment(tour, candidate, i, length, k);
+                        double time = cost(start[2], candidate);
+                        if (time < best - 1e-6) {
+                            best = time;
+                            System.arraycopy(candidate, 0, tour, 0, n);
+                            improved = true;
+                        }
+                    }
+                }
+            }
+        }
+        return tour;
+    }
+
+    /**
+     * @param start
+     *            the robot's pose {x, y, theta}
+     * @param stops
+     *            the positions {x, y} in cm to visit
+     * @param tour
+     *            the order of the stops
+     * @return the time in s to visit the stops in that order
+     */
+    public double cost(double[] start, List<float[]> stops, int[] tour) {
+        buildMatrix(start, stops);
+        return cost(start[2], tour);
+    }
+
+    private double cost(double heading, int[] tour) {
+        double time = 0;
+        int last = legTime.length - 1;
+        for (int i = 0; i < tour.length; i++) {
+            double nextHeading = bearing[last][tour[i]];
+            double turn = Math.abs(((nextHeading - heading) % 360 + 540) % 360 - 180);
+            time += turn / turnSpeed + legTime[last][tour[i]];
+            heading = nextHeading;
+            last = tour[i];
+        }
+        return time;
+    }
+
+    private void buildMatrix(double[] start, List<float[]> stops) {
+        int n = stops.size();
+        legTime = new double[n + 1][n];
+        bearing = new double[n + 1][n];
+        for (int i = 0; i <= n; i++) {
+            double x = i == n ? start[0] : stops.get(i)[0];
+            double y = i == n ? start[1] : stops.get(i)[1];
+            for (int j = 0; j < n; j++) {
+                double dx = stops.get(j)[0] - x;
+                double dy = stops.get(j)[1] - y;
+                double distance = Math.hypot(dx, dy);
+                legTime[i][j] = distance / speed + (distance > localizationDistance ? localizationTime : 0);
+                bearing[i][j] = Math.toDegrees(Math.atan2(dx, dy));
+            }
+        }
+    }
+
+    /**
+     * Copies a tour with the segment starting at i moved before the stop k.
+     */
+    private static void moveSegment(int[] tour, int[] moved, int i, int length, int k) {
+        int m = 0;
+        for (int p = 0; p <= tour.length; p++) {
+            if (p == k) {
+                for (int s = i; s < i + length; s++) {
+                    moved[m++] = tour[s];
+                }
+            }
+            if (p < tour.length && (p < i || p >= i + length)) {
+                moved[m++] = tour[p];
+            }
+        }
+    }
+}
@@ -57,7 +57,10 @@ public class GrabCanTest {
         
          //   Button.waitForAnyPress();
             Thread.sleep(2000);
-            claw.closeClaw();
+            boolean canIsHeld = claw.closeClaw();
+            System.out.println("Held: " + canIsHeld + " depth: " + claw.getCanDepth());
+            System.out.println("Final tacho: " + claw.getFinalTacho() + (claw.stalled() ? " stalled" : "")
+                    + " profile: " + claw.getClosureProfile().length + " samples");
             Thread.sleep(2000);
             claw.openClaw();
             Thread.sleep(2000);
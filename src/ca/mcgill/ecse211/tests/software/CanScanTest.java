@@ -196,7 +196,7 @@ public class CanScanTest {
                 claw.closeClaw();
                 claw.openClaw();
                 colourDetector.collectColourData(1);
-                CanColour canColour = colourDetector.getCanColour(colourDetector.getColourSamples());
+                CanColour canColour = colourDetector.getCanColour(colourDetector.getCanFaceSamples());
                 System.out.println(canColour);
             }
 
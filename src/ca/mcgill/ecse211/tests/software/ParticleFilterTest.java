@@ -0,0 +1,89 @@
+package ca.mcgill.ecse211.tests.software;
+
+import java.util.Random;
+
+import ca.mcgill.ecse211.Main;
+import ca.mcgill.ecse211.localizers.ParticleFilter;
+import ca.mcgill.ecse211.navigators.FieldMap;
+
+/**
+ * Simulates the robot making a full turn in place with an odometer that is off
+ * and prints how well the {@link ParticleFilter} finds its real pose.
+ * 
+ * @author Julian Armour
+ * @since April 11, 2019
+ */
+public class ParticleFilterTest {
+    private static final double TILE_SIZE    = Main.TILE_SIZE;
+    private static final double WIDTH        = FieldMap.FIELD_WIDTH * TILE_SIZE;
+    private static final double HEIGHT       = FieldMap.FIELD_HEIGHT * TILE_SIZE;
+    private static final double L            = Main.LT_SENSOR_TO_WHEELBASE;
+    private static final double W            = Main.LT_SENSOR_SPACING;
+
+    public static void main(String[] args) {
+        Random random = new Random(1);
+        // the real pose and the odometer's pose
+        double[] real = { 2.4 * TILE_SIZE, 1.7 * TILE_SIZE, 37 };
+        double[] odo = { real[0] + 6, real[1] - 5, real[2] + 8 };
+
+        ParticleFilter filter = new ParticleFilter(200, TILE_SIZE, WIDTH, HEIGHT, L, W, 2);
+        filter.spread(odo, 8, 15);
+
+        long start = System.nanoTime();
+        for (int step = 0; step < 180; step++) {
+            double[] leftBefore = sensor(real, true);
+            double[] rightBefore = sensor(real, false);
+            // the wheels slip a little when turning
+            real[2] = (real[2] + 2) % 360;
+            odo[2] = (odo[2] + 2 * 1.02) % 360;
+            filter.predict(odo);
+
+            if (crossed(leftBefore, sensor(real, true))) {
+                filter.lineCrossed(true);
+            }
+            if (crossed(rightBefore, sensor(real, false))) {
+                filter.lineCrossed(false);
+            }
+            if (step % 3 == 0) {
+                double range = rangeToWall(real);
+                // walls seen at a steep angle don't echo back, and sometimes a can is in the way
+                if (step % 30 == 0) {
+                    range = 20;
+                }
+                filter.rangeMeasured(range + random.nextGaussian());
+            }
+            filter.resampleIfNeeded();
+        }
+        long elapsed = (System.nanoTime() - start) / 1000000;
+
+        double[] estimate = filter.estimate();
+        double[] deviation = filter.deviation();
+        System.out.println(String.format("real:     %.1f %.1f %.1f", real[0], real[1], real[2]));
+        System.out.println(String.format("odometer: %.1f %.1f %.1f", odo[0], odo[1], odo[2]));
+        System.out.println(String.format("estimate: %.1f %.1f %.1f", estimate[0], estimate[1], estimate[2]));
+        System.out.println(String.format("deviation: %.1f cm %.1f deg in %d ms", deviation[0], deviation[1], elapsed));
+    }
+
+    private static double[] sensor(double[] pose, boolean left) {
+        double h = Math.toRadians(pose[2]);
+        double side = left ? -W / 2 : W / 2;
+        return new double[] { pose[0] - L * Math.sin(h) + side * Math.cos(h),
+                pose[1] - L * Math.cos(h) - side * Math.sin(h) };
+    }
+
+    private static boolean crossed(double[] before, double[] after) {
+        return Math.floor(before[0] / TILE_SIZE) != Math.floor(after[0] / TILE_SIZE)
+                || Math.floor(before[1] / TILE_SIZE) != Math.floor(after[1] / TILE_SIZE);
+    }
+
+    private static double rangeToWall(double[] pose) {
+        double dx = Math.sin(Math.toRadians(pose[2]));
+        double dy = Math.cos(Math.toRadians(pose[2]));
+        double tx = dx > 0 ? (WIDTH - pose[0]) / dx : dx < 0 ? -pose[0] / dx : Double.MAX_VALUE;
+        double ty = dy > 0 ? (HEIGHT - pose[1]) / dy : dy < 0 ? -pose[1] / dy : Double.MAX_VALUE;
+        double range = Math.min(tx, ty);
+        // the echo is lost when the wall is hit at more than 40 degrees
+        double incidence = tx < ty ? Math.abs(dx) : Math.abs(dy);
+        return incidence < Math.cos(Math.toRadians(40)) ? 255 : range;
+    }
+}
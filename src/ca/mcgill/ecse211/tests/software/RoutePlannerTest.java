@@ -0,0 +1,66 @@
+package ca.mcgill.ecse211.tests.software;
+
+import ca.mcgill.ecse211.Main;
+import ca.mcgill.ecse211.navigators.FieldMap;
+import ca.mcgill.ecse211.navigators.Route;
+import ca.mcgill.ecse211.navigators.RoutePlanner;
+
+/**
+ * Prints the field map, the routes to the tunnel in both directions and where
+ * the robot localizes after going through it.
+ * 
+ * @author Julian Armour
+ * @since April 8, 2019
+ */
+public class RoutePlannerTest {
+    private static final float TILE_SIZE = Main.TILE_SIZE;
+
+    private static int[]       STZ_LL    = { 0, 0 };
+    private static int[]       STZ_UR    = { 4, 4 };
+    private static int[]       ISL_LL    = { 6, 1 };
+    private static int[]       ISL_UR    = { 15, 9 };
+    private static int[]       TN_LL     = { 4, 2 };
+    private static int[]       TN_UR     = { 6, 3 };
+    private static int[]       SZ_LL     = { 10, 5 };
+    private static int[]       SZ_UR     = { 13, 8 };
+
+    public static void main(String[] args) {
+        FieldMap map = new FieldMap(STZ_LL, STZ_UR, ISL_LL, ISL_UR, TN_LL, TN_UR, SZ_LL, SZ_UR);
+        RoutePlanner planner = new RoutePlanner(map, TILE_SIZE);
+
+        for (int y = FieldMap.FIELD_HEIGHT - 1; y >= 0; y--) {
+            StringBuilder row = new StringBuilder();
+            for (int x = 0; x < FieldMap.FIELD_WIDTH; x++) {
+                row.append(map.getTile(x, y));
+            }
+            System.out.println(row);
+        }
+
+        // from the starting corner to the tunnel
+        Route out = planner.plan(
+                new double[] { TILE_SIZE, TILE_SIZE, 0 }, map.getTunnelApproachTile(true), map.getTunnelHeading(true)
+        );
+        printRoute("to tunnel", out);
+        printLanding(map.getTunnelLanding(true));
+
+        // from the middle of the search zone back to the tunnel
+        Route back = planner.plan(
+                new double[] { 11.5 * TILE_SIZE, 6.5 * TILE_SIZE, 270 }, map.getTunnelApproachTile(false),
+                map.getTunnelHeading(false)
+        );
+        printRoute("back to tunnel", back);
+        printLanding(map.getTunnelLanding(false));
+    }
+
+    private static void printRoute(String name, Route route) {
+        System.out.println(name + ": " + route);
+        System.out.println(
+                "turns: " + route.getTurns() + " localizations: " + route.getLocalizations() + " distance: "
+                        + Math.round(route.getDistance())
+        );
+    }
+
+    private static void printLanding(int[] landing) {
+        System.out.println("landing: (" + landing[0] + "," + landing[1] + ") side heading: " + landing[2]);
+    }
+}
@@ -0,0 +1,75 @@
+package ca.mcgill.ecse211.tests.software;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.mcgill.ecse211.Main;
+import ca.mcgill.ecse211.strategies.ScanPointPlanner;
+
+/**
+ * Plans the scan points of search zones of every size up to 6x6 tiles and
+ * prints how many points they take and how much of the zone they see, next to
+ * the grid of points two tiles apart that was used before.
+ * 
+ * @author Julian Armour
+ * @since April 13, 2019
+ */
+public class ScanPointPlannerTest {
+    private static final float  TILE_SIZE = Main.TILE_SIZE;
+    private static final float  RADIUS    = 2 * TILE_SIZE;
+    private static final double MIN_RANGE = 5;
+    private static final double CELL_SIZE = 5;
+    private static final double COVERAGE  = 0.97;
+    private static final int    MAX_TILES = 6;
+
+    public static void main(String[] args) {
+        ScanPointPlanner planner = new ScanPointPlanner(RADIUS, MIN_RANGE, CELL_SIZE, COVERAGE);
+        int mostPlanned = 0;
+        int mostGrid = 0;
+        for (int width = 1; width <= MAX_TILES; width++) {
+            for (int height = 1; height <= MAX_TILES; height++) {
+                float[] LL = { 2 * TILE_SIZE, 2 * TILE_SIZE };
+                float[] UR = { LL[0] + width * TILE_SIZE, LL[1] + height * TILE_SIZE };
+
+                long begin = System.nanoTime();
+                List<float[]> planned = planner.plan(LL, UR, TILE_SIZE, LL);
+                long time = System.nanoTime() - begin;
+
+                List<float[]> grid = new ArrayList<float[]>();
+                for (int i = 0; i < Math.round(width * TILE_SIZE / RADIUS); i++) {
+                    for (int j = 0; j < Math.round(height * TILE_SIZE / RADIUS); j++) {
+                        grid.add(new float[] { LL[0] + i * RADIUS, LL[1] + j * RADIUS });
+                    }
+                }
+
+                mostPlanned = Math.max(mostPlanned, planned.size());
+                mostGrid = Math.max(mostGrid, grid.size());
+                System.out.println(String.format("%dx%d: planned %d points seeing %5.1f%% in %.2f ms, grid %d seeing %5.1f%%",
+                        width, height, planned.size(), 100 * coverage(planned, LL, UR), time / 1e6, grid.size(),
+                        100 * coverage(grid, LL, UR)));
+            }
+        }
+        System.out.println("At most " + mostPlanned + " planned points, " + mostGrid + " grid points");
+    }
+
+    /**
+     * @return the fraction of the cells of a zone seen from at least one point
+     */
+    private static double coverage(List<float[]> points, float[] LL, float[] UR) {
+        int seen = 0;
+        int cells = 0;
+        for (double x = LL[0] + CELL_SIZE / 2; x < UR[0]; x += CELL_SIZE) {
+            for (double y = LL[1] + CELL_SIZE / 2; y < UR[1]; y += CELL_SIZE) {
+                cells++;
+                for (float[] point : points) {
+                    double distance = Math.hypot(x - point[0], y - point[1]);
+                    if (distance >= MIN_RANGE && distance <= RADIUS) {
+                        seen++;
+                        break;
+                    }
+                }
+            }
+        }
+        return (double) seen / cells;
+    }
+}
@@ -0,0 +1,77 @@
+package ca.mcgill.ecse211.tests.software;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ca.mcgill.ecse211.Main;
+import ca.mcgill.ecse211.strategies.TourPlanner;
+
+/**
+ * Plans tours over random stops in a search zone and prints how long they take
+ * compared to visiting the nearest stop first, and how long planning took.
+ * 
+ * @author Julian Armour
+ * @since April 13, 2019
+ */
+public class TourPlannerTest {
+    private static final float  TILE_SIZE    = Main.TILE_SIZE;
+    private static final long   SEED         = 211;
+    private static final int    TRIALS       = 20;
+
+    private static final double SPEED        = 9;
+    private static final double TURN_SPEED   = 56;
+    private static final double LOCALIZATION = 4.5;
+
+    private static float[]      SZ_LL        = { 10 * TILE_SIZE, 5 * TILE_SIZE };
+    private static float[]      SZ_UR        = { 14 * TILE_SIZE, 8 * TILE_SIZE };
+
+    public static void main(String[] args) {
+        TourPlanner planner = new TourPlanner(SPEED, TURN_SPEED, LOCALIZATION, TILE_SIZE);
+        Random random = new Random(SEED);
+        double[] start = { SZ_LL[0], SZ_LL[1], 90 };
+
+        for (int stops = 4; stops <= 13; stops++) {
+            double best = 0;
+            double total = 0;
+            long planTime = 0;
+            for (int trial = 0; trial < TRIALS; trial++) {
+                List<float[]> points = new ArrayList<float[]>();
+                for (int i = 0; i < stops; i++) {
+                    points.add(new float[] { SZ_LL[0] + random.nextFloat() * (SZ_UR[0] - SZ_LL[0]),
+                            SZ_LL[1] + random.nextFloat() * (SZ_UR[1] - SZ_LL[1]) });
+                }
+                long begin = System.nanoTime();
+                int[] tour = planner.plan(start, points);
+                planTime += System.nanoTime() - begin;
+                double nearest = planner.cost(start, points, nearestNeighbour(start, points));
+                double saved = 1 - planner.cost(start, points, tour) / nearest;
+                best = Math.max(best, saved);
+                total += saved;
+            }
+            System.out.println(String.format("%2d stops: %4.1f%% faster on average, %4.1f%% at best, %.2f ms to plan",
+                    stops, 100 * total / TRIALS, 100 * best, planTime / 1e6 / TRIALS));
+        }
+    }
+
+    private static int[] nearestNeighbour(double[] start, List<float[]> points) {
+        int[] tour = new int[points.size()];
+        boolean[] visited = new boolean[points.size()];
+        double x = start[0];
+        double y = start[1];
+        for (int i = 0; i < tour.length; i++) {
+            int next = -1;
+            for (int j = 0; j < tour.length; j++) {
+                if (!visited[j] && (next == -1 || Math.hypot(points.get(j)[0] - x, points.get(j)[1] - y) < Math
+                        .hypot(points.get(next)[0] - x, points.get(next)[1] - y))) {
+                    next = j;
+                }
+            }
+            tour[i] = next;
+            visited[next] = true;
+            x = points.get(next)[0];
+            y = points.get(next)[1];
+        }
+        return tour;
+    }
+}
@@ -31,7 +31,7 @@ public class colourDetectionTest {
         Button.waitForAnyPress();
         
         colDet.collectColourData(numberOfScans);
-        System.out.println(colDet.getCanColour(colDet.getColourSamples()));
+        System.out.println(colDet.getCanColour(colDet.getCanFaceSamples()));
         
 	}
 	